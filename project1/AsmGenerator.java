@@ -0,0 +1,709 @@
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Translates the syntax tree to x86-64 assembly for the System V ABI, so the
+ * program can be assembled and linked with gcc without LLVM. The program is
+ * compiled to Bytecode first and the stack of the Bytecode is turned into
+ * virtual registers: every variable is one virtual register and every value
+ * an operation pushes is a new one that is read once. Virtual registers get
+ * machine registers with linear scan register allocation over their live
+ * intervals. The interval of a variable covers every loop it is used in,
+ * values that live across a call to print get callee-saved registers and
+ * intervals that do not fit in registers are spilled to the stack. print
+ * calls a small routine that calls printf and choose functions are computed
+ * with cmov after all four arguments, like the LLVM code.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class AsmGenerator {
+
+	/**
+	 * Kind of an instruction that copies its operand to its target, other kinds
+	 * are the Bytecode instructions
+	 */
+	private static final int MOVE = Bytecode.STORE;
+	/**
+	 * Set in an operand that is a virtual register, other operands are numbers
+	 */
+	private static final long REGISTER = 1L << 32;
+	/**
+	 * Machine registers that are given to virtual registers, caller-saved ones
+	 * first. eax, edx and r11d are used by the instructions that need a register.
+	 */
+	private static final String[] REGISTERS = { "%ecx", "%esi", "%edi", "%r8d", "%r9d", "%r10d", "%ebx", "%r12d",
+			"%r13d", "%r14d", "%r15d" };
+	/**
+	 * 64-bit names of the callee-saved registers, in the order of REGISTERS
+	 */
+	private static final String[] CALLEE_SAVED = { "%rbx", "%r12", "%r13", "%r14", "%r15" };
+	/**
+	 * Position of the first callee-saved register in REGISTERS
+	 */
+	private static final int CALLEE_FIRST = REGISTERS.length - CALLEE_SAVED.length;
+
+	/**
+	 * Collects the output
+	 */
+	private Emitter out;
+	/**
+	 * Kind of each instruction
+	 */
+	private int[] kinds = new int[256];
+	/**
+	 * Virtual register each instruction writes, position of the instruction it
+	 * jumps to for jumps
+	 */
+	private int[] targets = new int[256];
+	/**
+	 * Four operands of each instruction, numbers or virtual registers with the
+	 * 33th bit set
+	 */
+	private long[] operands = new long[1024];
+	/**
+	 * Number of instructions
+	 */
+	private int count = 0;
+	/**
+	 * Number of variables, they are the first virtual registers
+	 */
+	private int slots;
+	/**
+	 * Number of virtual registers
+	 */
+	private int virtualRegisters;
+	/**
+	 * First position of each virtual register
+	 */
+	private int[] starts;
+	/**
+	 * Last position of each virtual register, -1 if it is never used
+	 */
+	private int[] ends;
+	/**
+	 * Machine register of each virtual register, spill slot k is -(k + 1)
+	 */
+	private int[] locations;
+	/**
+	 * Number of spill slots
+	 */
+	private int spills;
+	/**
+	 * Number of callee-saved registers that are used, they are saved in order
+	 */
+	private int calleeSaved;
+
+	/**
+	 * Constructor of the AsmGenerator class.
+	 *
+	 * @param out emitter that collects the output, it is reset
+	 */
+	public AsmGenerator(Emitter out) {
+		this.out = out;
+		out.reset();
+	}
+
+	/**
+	 * Prints the assembly of the whole program.
+	 *
+	 * @param program optimized program
+	 */
+	public void generate(Node.Program program) {
+		lower(new BytecodeCompiler().compile(program));
+		liveIntervals(program);
+		allocateRegisters();
+		printProgram(program);
+	}
+
+	/**
+	 * Turns the stack of the Bytecode into virtual registers. Values on the stack
+	 * are numbers, variables or results of operations. A result that is stored
+	 * in a variable right after it is computed is written to the variable.
+	 *
+	 * @param bytecode compiled program
+	 */
+	private void lower(Bytecode bytecode) {
+		int[] code = bytecode.code;
+		slots = bytecode.slots;
+		virtualRegisters = slots;
+		int[] positions = new int[code.length + 1];
+		long[] stack = new long[bytecode.stackSize + 1];
+		int sp = 0;
+		int pc = 0;
+		while (pc < code.length) {
+			positions[pc] = count;
+			int instruction = code[pc++];
+			switch (instruction) {
+			case Bytecode.CONST:
+				stack[sp++] = code[pc++] & 0xFFFFFFFFL;
+				break;
+			case Bytecode.LOAD:
+				stack[sp++] = REGISTER | code[pc++];
+				break;
+			case Bytecode.STORE:
+				store(code[pc++], stack[--sp]);
+				break;
+			case Bytecode.CHOOSE:
+				sp -= 4;
+				add(Bytecode.CHOOSE, virtualRegisters, stack[sp], stack[sp + 1], stack[sp + 2], stack[sp + 3]);
+				stack[sp++] = REGISTER | virtualRegisters++;
+				break;
+			case Bytecode.PRINT:
+				add(Bytecode.PRINT, -1, stack[--sp], 0, 0, 0);
+				break;
+			case Bytecode.JUMP:
+				add(Bytecode.JUMP, code[pc++], 0, 0, 0, 0);
+				break;
+			case Bytecode.JUMP_IF_ZERO:
+				add(Bytecode.JUMP_IF_ZERO, code[pc++], stack[--sp], 0, 0, 0);
+				break;
+			case Bytecode.HALT:
+				add(Bytecode.HALT, -1, 0, 0, 0, 0);
+				break;
+			default:
+				// ADD, SUB, MUL or DIV
+				sp -= 2;
+				add(instruction, virtualRegisters, stack[sp], stack[sp + 1], 0, 0);
+				stack[sp++] = REGISTER | virtualRegisters++;
+			}
+		}
+		positions[code.length] = count;
+		// Jumps go to positions of instructions instead of Bytecode positions
+		for (int i = 0; i < count; i++) {
+			if (kinds[i] == Bytecode.JUMP || kinds[i] == Bytecode.JUMP_IF_ZERO)
+				targets[i] = positions[targets[i]];
+		}
+	}
+
+	/**
+	 * Stores a value in a variable.
+	 *
+	 * @param slot  variable
+	 * @param value number or virtual register
+	 */
+	private void store(int slot, long value) {
+		int register = (int) value;
+		if ((value & REGISTER) != 0 && register >= slots && count > 0 && writes(kinds[count - 1])
+				&& targets[count - 1] == register) {
+			// The operation writes the variable
+			targets[count - 1] = slot;
+			return;
+		}
+		if (value != (REGISTER | slot))
+			add(MOVE, slot, value, 0, 0, 0);
+	}
+
+	/**
+	 * Appends an instruction.
+	 *
+	 * @param kind   kind of the instruction
+	 * @param target virtual register it writes or position it jumps to
+	 * @param a      first operand
+	 * @param b      second operand
+	 * @param c      third operand
+	 * @param d      fourth operand
+	 */
+	private void add(int kind, int target, long a, long b, long c, long d) {
+		if (count == kinds.length) {
+			kinds = Arrays.copyOf(kinds, count * 2);
+			targets = Arrays.copyOf(targets, count * 2);
+			operands = Arrays.copyOf(operands, count * 8);
+		}
+		kinds[count] = kind;
+		targets[count] = target;
+		operands[4 * count] = a;
+		operands[4 * count + 1] = b;
+		operands[4 * count + 2] = c;
+		operands[4 * count + 3] = d;
+		count++;
+	}
+
+	/**
+	 * @param kind kind of an instruction
+	 * @return true if the instruction writes a virtual register
+	 */
+	private static boolean writes(int kind) {
+		return kind != Bytecode.PRINT && kind != Bytecode.JUMP && kind != Bytecode.JUMP_IF_ZERO
+				&& kind != Bytecode.HALT;
+	}
+
+	/**
+	 * @param kind kind of an instruction
+	 * @return number of operands the instruction reads
+	 */
+	private static int operandCount(int kind) {
+		switch (kind) {
+		case Bytecode.CHOOSE:
+			return 4;
+		case Bytecode.ADD:
+		case Bytecode.SUB:
+		case Bytecode.MUL:
+		case Bytecode.DIV:
+			return 2;
+		case Bytecode.JUMP:
+		case Bytecode.HALT:
+			return 0;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Finds the first and the last position of every virtual register. Results
+	 * of operations are read once in the same statement. Variables that can be
+	 * read before they are assigned start at the beginning with 0, and the
+	 * interval of a variable that is used in a loop covers the outermost such
+	 * loop, because its value goes around the loop.
+	 *
+	 * @param program optimized program, its variables are the slots in order
+	 */
+	private void liveIntervals(Node.Program program) {
+		starts = new int[virtualRegisters];
+		ends = new int[virtualRegisters];
+		Arrays.fill(ends, -1);
+		boolean[] zero = new boolean[slots];
+		boolean[] assigned = new boolean[slots];
+		for (int i = 0; i < count; i++) {
+			for (int j = 0; j < operandCount(kinds[i]); j++) {
+				long operand = operands[4 * i + j];
+				if ((operand & REGISTER) == 0)
+					continue;
+				int register = (int) operand;
+				if (register < slots && !assigned[register])
+					zero[register] = true;
+				use(register, i);
+			}
+			if (writes(kinds[i])) {
+				if (targets[i] < slots)
+					assigned[targets[i]] = true;
+				use(targets[i], i);
+			}
+		}
+
+		// Variables that Parser loads before they are stored
+		HashSet<String> initialized = new HashSet<String>(program.initialized);
+		for (int slot = 0; slot < slots; slot++) {
+			if (initialized.contains(program.variables.get(slot)))
+				zero[slot] = true;
+			if (zero[slot] && ends[slot] >= 0)
+				starts[slot] = 0;
+		}
+
+		// Outermost loop of each position, loops are nested or apart
+		int[] loopStarts = new int[count];
+		int[] loopEnds = new int[count];
+		Arrays.fill(loopStarts, -1);
+		long[] loops = new long[count];
+		int loopCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (kinds[i] == Bytecode.JUMP && targets[i] <= i)
+				loops[loopCount++] = (long) targets[i] << 32 | i;
+		}
+		Arrays.sort(loops, 0, loopCount);
+		int coveredTo = -1;
+		for (int i = 0; i < loopCount; i++) {
+			int start = (int) (loops[i] >>> 32);
+			int end = (int) loops[i];
+			if (start <= coveredTo)
+				continue;
+			for (int position = start; position <= end; position++) {
+				loopStarts[position] = start;
+				loopEnds[position] = end;
+			}
+			coveredTo = end;
+		}
+		for (int slot = 0; slot < slots; slot++) {
+			if (ends[slot] < 0)
+				continue;
+			if (loopStarts[starts[slot]] >= 0)
+				starts[slot] = loopStarts[starts[slot]];
+			if (loopStarts[ends[slot]] >= 0)
+				ends[slot] = loopEnds[ends[slot]];
+		}
+	}
+
+	/**
+	 * Adds a position to the interval of a virtual register.
+	 *
+	 * @param register virtual register
+	 * @param position position of the instruction
+	 */
+	private void use(int register, int position) {
+		if (ends[register] < 0)
+			starts[register] = position;
+		ends[register] = position;
+	}
+
+	/**
+	 * Gives every interval a machine register or a spill slot in order of their
+	 * starts. A register is free after the last position of its interval, or at
+	 * that position for the interval the instruction there writes. If no
+	 * register is free, the interval that ends last is spilled.
+	 */
+	private void allocateRegisters() {
+		// Positions of the calls to print, counted up to each position
+		int[] calls = new int[count + 1];
+		for (int i = 0; i < count; i++)
+			calls[i + 1] = calls[i] + (kinds[i] == Bytecode.PRINT ? 1 : 0);
+
+		long[] order = new long[virtualRegisters];
+		int intervals = 0;
+		for (int register = 0; register < virtualRegisters; register++) {
+			if (ends[register] >= 0)
+				order[intervals++] = (long) starts[register] << 32 | register;
+		}
+		Arrays.sort(order, 0, intervals);
+
+		locations = new int[virtualRegisters];
+		spills = 0;
+		calleeSaved = 0;
+		int[] active = new int[REGISTERS.length];
+		Arrays.fill(active, -1);
+		for (int i = 0; i < intervals; i++) {
+			int register = (int) order[i];
+			int start = starts[register];
+			boolean written = start < count && writes(kinds[start]) && targets[start] == register;
+			for (int r = 0; r < REGISTERS.length; r++) {
+				if (active[r] >= 0 && (ends[active[r]] < start || written && ends[active[r]] == start))
+					active[r] = -1;
+			}
+			// A value that lives across print keeps a callee-saved register
+			boolean acrossCall = calls[ends[register]] - calls[start + 1] > 0;
+			int first = acrossCall ? CALLEE_FIRST : 0;
+			int free = -1;
+			for (int r = first; r < REGISTERS.length && free < 0; r++) {
+				if (active[r] < 0)
+					free = r;
+			}
+			if (free < 0) {
+				int last = first;
+				for (int r = first + 1; r < REGISTERS.length; r++) {
+					if (ends[active[r]] > ends[active[last]])
+						last = r;
+				}
+				if (ends[active[last]] <= ends[register]) {
+					locations[register] = -(++spills);
+					continue;
+				}
+				locations[active[last]] = -(++spills);
+				free = last;
+			}
+			locations[register] = free;
+			active[free] = register;
+			if (free >= CALLEE_FIRST)
+				calleeSaved = Math.max(calleeSaved, free - CALLEE_FIRST + 1);
+		}
+	}
+
+	/**
+	 * Prints main with the instructions and the print routine.
+	 *
+	 * @param program optimized program
+	 */
+	private void printProgram(Node.Program program) {
+		printStartingLines();
+		out.append("\tpushq %rbp").newLine();
+		out.append("\tmovq %rsp, %rbp").newLine();
+		for (int i = 0; i < calleeSaved; i++)
+			out.append("\tpushq ").append(CALLEE_SAVED[i]).newLine();
+		// Calls need the stack aligned to 16 bytes
+		int frame = (spills * 4 + 15) / 16 * 16 + (calleeSaved % 2 == 1 ? 8 : 0);
+		if (frame > 0)
+			out.append("\tsubq $").append(frame).append(", %rsp").newLine();
+		for (int slot = 0; slot < slots; slot++) {
+			if (ends[slot] >= 0 && starts[slot] == 0 && !(writes(kinds[0]) && targets[0] == slot && !reads(0, slot)))
+				out.append("\tmovl $0, ").append(location(slot)).newLine();
+		}
+
+		boolean[] labels = new boolean[count + 1];
+		for (int i = 0; i < count; i++) {
+			if (kinds[i] == Bytecode.JUMP || kinds[i] == Bytecode.JUMP_IF_ZERO)
+				labels[targets[i]] = true;
+		}
+		for (int i = 0; i < count; i++) {
+			if (labels[i])
+				out.append(".L").append(i).append(':').newLine();
+			printInstruction(i);
+		}
+		printRuntime();
+	}
+
+	/**
+	 * @param position position of an instruction
+	 * @param register virtual register
+	 * @return true if the instruction reads the virtual register
+	 */
+	private boolean reads(int position, int register) {
+		for (int j = 0; j < operandCount(kinds[position]); j++) {
+			if (operands[4 * position + j] == (REGISTER | register))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Prints the machine instructions of one instruction.
+	 *
+	 * @param i position of the instruction
+	 */
+	private void printInstruction(int i) {
+		int target = targets[i];
+		long a = operands[4 * i];
+		long b = operands[4 * i + 1];
+		switch (kinds[i]) {
+		case MOVE:
+			if (at(a, target))
+				break;
+			if ((a & REGISTER) != 0 && locations[(int) a] < 0 && locations[target] < 0) {
+				move(a, "%eax");
+				out.append("\tmovl %eax, ").append(location(target)).newLine();
+			} else
+				move(a, location(target));
+			break;
+		case Bytecode.ADD:
+		case Bytecode.SUB:
+		case Bytecode.MUL:
+			// Operands of addition and multiplication are swapped so the result is not
+			// written over the right side
+			if (kinds[i] != Bytecode.SUB && at(b, target)) {
+				long swap = a;
+				a = b;
+				b = swap;
+			}
+			boolean direct = locations[target] >= 0 && !at(b, target);
+			String result = direct ? location(target) : "%eax";
+			if (!direct || !at(a, target))
+				move(a, result);
+			out.append(kinds[i] == Bytecode.ADD ? "\taddl " : kinds[i] == Bytecode.SUB ? "\tsubl " : "\timull ");
+			operand(b).append(", ").append(result).newLine();
+			if (!direct)
+				out.append("\tmovl %eax, ").append(location(target)).newLine();
+			break;
+		case Bytecode.DIV:
+			// Printed numbers are written before a division by 0 or -2147483648 / -1
+			// stops the program
+			move(a, "%eax");
+			out.append("\tcltd").newLine();
+			if (b == 0)
+				out.append("\tjmp mylang_divide_error").newLine();
+			else if ((b & REGISTER) == 0) {
+				if ((int) b == -1)
+					jumpIfMinimum();
+				move(b, "%r11d");
+				out.append("\tidivl %r11d").newLine();
+			} else {
+				String divisor = location((int) b);
+				if (locations[(int) b] >= 0)
+					out.append("\ttestl ").append(divisor).append(", ").append(divisor).newLine();
+				else
+					out.append("\tcmpl $0, ").append(divisor).newLine();
+				out.append("\tje mylang_divide_error").newLine();
+				out.append("\tcmpl $-1, ").append(divisor).newLine();
+				out.append("\tjne .Ldiv").append(i).newLine();
+				jumpIfMinimum();
+				out.append(".Ldiv").append(i).append(':').newLine();
+				out.append("\tidivl ").append(divisor).newLine();
+			}
+			out.append("\tmovl %eax, ").append(location(target)).newLine();
+			break;
+		case Bytecode.CHOOSE:
+			printChoose(i);
+			break;
+		case Bytecode.PRINT:
+			if (!((a & REGISTER) != 0 && location((int) a).equals("%edi")))
+				move(a, "%edi");
+			out.append("\tcall mylang_print").newLine();
+			break;
+		case Bytecode.JUMP:
+			out.append("\tjmp .L").append(target).newLine();
+			break;
+		case Bytecode.JUMP_IF_ZERO:
+			if ((a & REGISTER) == 0) {
+				if ((int) a == 0)
+					out.append("\tjmp .L").append(target).newLine();
+				break;
+			}
+			if (locations[(int) a] >= 0) {
+				String register = location((int) a);
+				out.append("\ttestl ").append(register).append(", ").append(register).newLine();
+			} else
+				out.append("\tcmpl $0, ").append(location((int) a)).newLine();
+			out.append("\tje .L").append(target).newLine();
+			break;
+		default:
+			// HALT
+			out.append("\txorl %eax, %eax").newLine();
+			if (calleeSaved > 0)
+				out.append("\tleaq -").append(8 * calleeSaved).append("(%rbp), %rsp").newLine();
+			else
+				out.append("\tmovq %rbp, %rsp").newLine();
+			for (int r = calleeSaved - 1; r >= 0; r--)
+				out.append("\tpopq ").append(CALLEE_SAVED[r]).newLine();
+			out.append("\tpopq %rbp").newLine();
+			out.append("\tret").newLine();
+		}
+	}
+
+	/**
+	 * Prints a choose function without branches: the negative argument is
+	 * replaced by the positive one if the selector is positive and by the zero
+	 * argument if it is 0. A selector that is a number chooses at compile time.
+	 *
+	 * @param i position of the choose function
+	 */
+	private void printChoose(int i) {
+		long selector = operands[4 * i];
+		long zero = operands[4 * i + 1];
+		long positive = operands[4 * i + 2];
+		long negative = operands[4 * i + 3];
+		String target = location(targets[i]);
+		if ((selector & REGISTER) == 0) {
+			int value = (int) selector;
+			move(value == 0 ? zero : value > 0 ? positive : negative, "%eax");
+			out.append("\tmovl %eax, ").append(target).newLine();
+			return;
+		}
+		move(negative, "%eax");
+		out.append("\tcmpl $0, ").append(location((int) selector)).newLine();
+		// Moves do not change the flags
+		conditionalMove("\tcmovg ", positive);
+		conditionalMove("\tcmove ", zero);
+		out.append("\tmovl %eax, ").append(target).newLine();
+	}
+
+	/**
+	 * Prints a cmov to eax, a number is moved to edx first.
+	 *
+	 * @param instruction cmov instruction with its condition
+	 * @param value       number or virtual register
+	 */
+	private void conditionalMove(String instruction, long value) {
+		if ((value & REGISTER) == 0) {
+			move(value, "%edx");
+			out.append(instruction).append("%edx, %eax").newLine();
+		} else
+			out.append(instruction).append(location((int) value)).append(", %eax").newLine();
+	}
+
+	/**
+	 * Prints a movl of a number or a virtual register.
+	 *
+	 * @param value number or virtual register
+	 * @param to    register or memory
+	 */
+	private void move(long value, String to) {
+		out.append("\tmovl ");
+		operand(value).append(", ").append(to).newLine();
+	}
+
+	/**
+	 * Writes an operand: "$5", a register or a spill slot.
+	 *
+	 * @param value number or virtual register
+	 * @return emitter
+	 */
+	private Emitter operand(long value) {
+		if ((value & REGISTER) == 0)
+			return out.append('$').append((int) value);
+		return out.append(location((int) value));
+	}
+
+	/**
+	 * @param value    number or virtual register
+	 * @param register virtual register
+	 * @return true if the value is the virtual register or has the same location
+	 */
+	private boolean at(long value, int register) {
+		return (value & REGISTER) != 0 && locations[(int) value] == locations[register];
+	}
+
+	/**
+	 * @param register virtual register
+	 * @return its machine register or its spill slot like "-12(%rbp)"
+	 */
+	private String location(int register) {
+		int location = locations[register];
+		if (location >= 0)
+			return REGISTERS[location];
+		return "-" + (8 * calleeSaved - 4 * location) + "(%rbp)";
+	}
+
+	/**
+	 * Prints the lines before the instructions of main.
+	 */
+	private void printStartingLines() {
+		out.append("\t.text").newLine();
+		out.append("\t.globl main").newLine();
+		out.append("\t.type main, @function").newLine();
+		out.append("main:").newLine();
+	}
+
+	/**
+	 * Prints the jump to the routine that stops the program if the dividend in
+	 * eax is -2147483648, dividing it by -1 overflows.
+	 */
+	private void jumpIfMinimum() {
+		out.append("\tcmpl $-2147483648, %eax").newLine();
+		out.append("\tje mylang_divide_error").newLine();
+	}
+
+	/**
+	 * Prints the routine that prints a number on its own line, the routine that
+	 * writes the printed numbers and stops the program after a division that
+	 * traps and the format string. The stack is aligned to 16 bytes when main calls them.
+	 */
+	private void printRuntime() {
+		out.append("mylang_print:").newLine();
+		out.append("\tsubq $8, %rsp").newLine();
+		out.append("\tmovl %edi, %esi").newLine();
+		out.append("\tleaq .Lprint(%rip), %rdi").newLine();
+		out.append("\txorl %eax, %eax").newLine();
+		out.append("\tcall printf@PLT").newLine();
+		out.append("\taddq $8, %rsp").newLine();
+		out.append("\tret").newLine();
+		// Main jumps here with the stack aligned, the division traps with SIGFPE
+		out.append("mylang_divide_error:").newLine();
+		out.append("\txorl %edi, %edi").newLine();
+		out.append("\tcall fflush@PLT").newLine();
+		out.append("\txorl %eax, %eax").newLine();
+		out.append("\txorl %ecx, %ecx").newLine();
+		out.append("\tcltd").newLine();
+		out.append("\tidivl %ecx").newLine();
+		printEndingLines(".Lprint", "%d\\n");
+	}
+
+	/**
+	 * Prints a format string and the section that marks the stack not
+	 * executable.
+	 *
+	 * @param label  label of the string
+	 * @param format format string with escapes of the assembler
+	 */
+	private void printEndingLines(String label, String format) {
+		out.append("\t.section .rodata").newLine();
+		out.append(label).append(':').newLine();
+		out.append("\t.string \"").append(format).append('"').newLine();
+		out.append("\t.section .note.GNU-stack,\"\",@progbits").newLine();
+	}
+
+	/**
+	 * This function is called when there is a syntax error. Drops the output
+	 * produced so far and prints the program that prints syntax error.
+	 *
+	 * @param lineNo line number of the syntax error
+	 */
+	public void syntaxError(int lineNo) {
+		out.reset();
+		printStartingLines();
+		out.append("\tsubq $8, %rsp").newLine();
+		out.append("\tmovl $").append(lineNo).append(", %esi").newLine();
+		out.append("\tleaq .Lerror(%rip), %rdi").newLine();
+		out.append("\txorl %eax, %eax").newLine();
+		out.append("\tcall printf@PLT").newLine();
+		out.append("\txorl %eax, %eax").newLine();
+		out.append("\taddq $8, %rsp").newLine();
+		out.append("\tret").newLine();
+		printEndingLines(".Lerror", "Line %d: syntax error\\n");
+	}
+}
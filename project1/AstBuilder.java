@@ -0,0 +1,873 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * Builds the abstract syntax tree of a mylang input from the tokens of the
+ * Lexer. Every line holds one statement, bodies of if and while statements are
+ * between curly brackets and can not be nested. With nested blocks bodies can
+ * hold if and while statements to any depth. A long input can be read in
+ * parts of whole top level statements, so only one part is kept in memory.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class AstBuilder {
+
+	/**
+	 * Largest depth of parenthesis and choose functions in an expression. Every
+	 * later phase walks them with recursion, this many levels fit in the stack of
+	 * Main.STACK_SIZE.
+	 */
+	public static final int MAX_NESTING = 100000;
+	/**
+	 * Largest depth of nested bodies. Loop optimizations walk the whole body of
+	 * every loop, so the time grows with the square of the depth.
+	 */
+	public static final int MAX_BODY_NESTING = 20000;
+
+	/**
+	 * Types of the tokens
+	 */
+	private TokenType[] types = new TokenType[1024];
+	/**
+	 * Line numbers of the tokens
+	 */
+	private int[] lines = new int[1024];
+	/**
+	 * Texts of identifiers, numbers and invalid words, null for other tokens
+	 */
+	private String[] texts = new String[1024];
+	/**
+	 * Number of tokens
+	 */
+	private int size = 0;
+	/**
+	 * Number of lines in the input
+	 */
+	private int lineCount;
+	/**
+	 * Line of the statement being parsed, used for syntax errors
+	 */
+	private int lineNo = 0;
+	/**
+	 * Position of the next token of the expression being parsed
+	 */
+	private int pos;
+	/**
+	 * Position after the last token of the expression being parsed
+	 */
+	private int limit;
+	/**
+	 * Parenthesis and choose functions around the current token of the
+	 * expression
+	 */
+	private int expressionDepth;
+	/**
+	 * Nested bodies around the body being parsed
+	 */
+	private int bodyDepth;
+	/**
+	 * Allow if and while statements in bodies
+	 */
+	private boolean nested;
+	/**
+	 * Lexer of an input that is read in parts, null if all tokens are read at
+	 * once
+	 */
+	private Lexer lexer;
+	/**
+	 * Current token of the lexer is not added to a part yet
+	 */
+	private boolean pending = false;
+	/**
+	 * Variables of the parts that are parsed
+	 */
+	private HashSet<String> seen = new HashSet<String>();
+	/**
+	 * Syntax errors found so far if every error is collected, null to stop at
+	 * the first one
+	 */
+	private ArrayList<SyntaxException> diagnostics = null;
+
+	/**
+	 * Constructor of the AstBuilder class, reads all tokens of the lexer.
+	 *
+	 * @param lexer lexer at the beginning of the input
+	 */
+	public AstBuilder(Lexer lexer) {
+		this(lexer, false);
+	}
+
+	/**
+	 * Constructor of the AstBuilder class, reads all tokens of the lexer.
+	 *
+	 * @param lexer  lexer at the beginning of the input
+	 * @param nested true to allow if and while statements in bodies
+	 */
+	public AstBuilder(Lexer lexer, boolean nested) {
+		this.nested = nested;
+		while (lexer.next())
+			addToken(lexer);
+		lineCount = lexer.lineCount();
+	}
+
+	/**
+	 * Constructor of the AstBuilder class for an input that is read in parts with
+	 * readPart.
+	 *
+	 * @param nested true to allow if and while statements in bodies
+	 * @param lexer  lexer at the beginning of the input
+	 */
+	public AstBuilder(boolean nested, Lexer lexer) {
+		this.nested = nested;
+		this.lexer = lexer;
+	}
+
+	/**
+	 * Collects every syntax error instead of stopping at the first one. Parsing
+	 * goes on after the statement with the error, bodies are still parsed, and
+	 * parseProgram throws the first error with all of them.
+	 */
+	public void collectDiagnostics() {
+		diagnostics = new ArrayList<SyntaxException>();
+	}
+
+	/**
+	 * Reads the tokens of the next part of the input. A part ends at the end of a
+	 * line that is not in a body, after at least the given number of tokens, so
+	 * every statement is in one part.
+	 *
+	 * @param minTokens number of tokens after which the part ends
+	 * @return false if there are no more tokens
+	 */
+	public boolean readPart(int minTokens) {
+		size = 0;
+		// Open curly brackets, a curly bracket of the other mode is closed by the next "}"
+		int depth = 0;
+		boolean comment = false;
+		while (pending || lexer.next()) {
+			pending = false;
+			if (size > 0 && lexer.line() != lines[size - 1]) {
+				if (depth == 0 && size >= minTokens) {
+					pending = true;
+					return true;
+				}
+				comment = false;
+			}
+			if (lexer.type() == TokenType.COMMENT)
+				comment = true;
+			else if (lexer.type() == TokenType.LEFT_CURLY_BRACKET && !comment)
+				depth = nested ? depth + 1 : 1;
+			// Curly brackets in comments close bodies without nested blocks
+			else if (lexer.type() == TokenType.RIGHT_CURLY_BRACKET && (!comment || !nested) && depth > 0)
+				depth--;
+			addToken(lexer);
+		}
+		lineCount = lexer.lineCount();
+		return size > 0;
+	}
+
+	/**
+	 * Builds the tree of the part that is read last.
+	 *
+	 * @return program node of the part, its variables are the ones that do not
+	 *         appear in the parts before
+	 * @throws SyntaxException
+	 */
+	public Node.Program parsePart() throws SyntaxException {
+		Node.Program part = parseProgram();
+		ArrayList<String> variables = new ArrayList<String>();
+		for (String var : part.variables) {
+			if (seen.add(var))
+				variables.add(var);
+		}
+		return new Node.Program(part.statements, variables);
+	}
+
+	/**
+	 * Adds the current token of the lexer to the tokens.
+	 *
+	 * @param lexer lexer at a token
+	 */
+	private void addToken(Lexer lexer) {
+		if (size == types.length) {
+			types = Arrays.copyOf(types, size * 2);
+			lines = Arrays.copyOf(lines, size * 2);
+			texts = Arrays.copyOf(texts, size * 2);
+		}
+		types[size] = lexer.type();
+		lines[size] = lexer.line();
+		texts[size] = lexer.type().getText() == null ? lexer.text() : null;
+		size++;
+	}
+
+	/**
+	 * @return number of tokens of the input
+	 */
+	public int getTokenCount() {
+		return size;
+	}
+
+	/**
+	 * @return number of lines of the input
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Builds the tree of the whole input, or of the part that is read last.
+	 *
+	 * @return program node
+	 * @throws SyntaxException the first syntax error, with every error of the
+	 *                         input if they are collected
+	 */
+	public Node.Program parseProgram() throws SyntaxException {
+		ArrayList<Node.Statement> statements = new ArrayList<Node.Statement>();
+		if (!nested)
+			parseStatements(0, size, statements);
+		else {
+			int i = parseBody(0, statements);
+			// Curly bracket that closes no body
+			while (i < size) {
+				lineNo = lines[i];
+				report("'}' closes no body");
+				i = parseBody(i + 1, statements);
+			}
+		}
+		// First error is thrown with all of them
+		if (diagnostics != null && !diagnostics.isEmpty()) {
+			SyntaxException first = new SyntaxException(diagnostics);
+			diagnostics.clear();
+			throw first;
+		}
+		return new Node.Program(statements, findVariables());
+	}
+
+	/**
+	 * Finds variable names in order of first appearance. Tokens after "#" are not
+	 * searched.
+	 *
+	 * @return variable names
+	 */
+	private ArrayList<String> findVariables() {
+		LinkedHashSet<String> variables = new LinkedHashSet<String>();
+		boolean comment = false;
+		for (int i = 0; i < size; i++) {
+			if (i > 0 && lines[i] != lines[i - 1])
+				comment = false;
+			if (types[i] == TokenType.COMMENT)
+				comment = true;
+			else if (!comment && types[i] == TokenType.IDENTIFIER)
+				variables.add(texts[i]);
+		}
+		return new ArrayList<String>(variables);
+	}
+
+	/**
+	 * Parses statements between two token positions. Each line holds one
+	 * statement, a line continues after the closing curly bracket of an if or
+	 * while statement. When errors are collected, parsing goes on after the
+	 * statement with the error.
+	 *
+	 * @param from       position of the first token
+	 * @param to         position after the last token
+	 * @param statements list to add the statements to
+	 * @throws SyntaxException
+	 */
+	private void parseStatements(int from, int to, ArrayList<Node.Statement> statements) throws SyntaxException {
+		int i = from;
+		while (i < to) {
+			try {
+				i = parseStatement(i, to, statements);
+			} catch (SyntaxException e) {
+				report(e);
+				i = skipStatement(i, to, statements);
+			}
+		}
+	}
+
+	/**
+	 * Parses the statement on one line.
+	 *
+	 * @param i          position of the first token of the line
+	 * @param to         position after the last token
+	 * @param statements list to add the statement to
+	 * @return position after the statement
+	 * @throws SyntaxException
+	 */
+	private int parseStatement(int i, int to, ArrayList<Node.Statement> statements) throws SyntaxException {
+		lineNo = lines[i];
+		int lineEnd = i;
+		while (lineEnd < to && lines[lineEnd] == lineNo)
+			lineEnd++;
+		// Delete tokens after "#"
+		int end = i;
+		while (end < lineEnd && types[end] != TokenType.COMMENT)
+			end++;
+
+		// continue if line is empty
+		if (end == i)
+			return lineEnd;
+
+		// a line must consist of at least 3 tokens
+		if (end - i < 3)
+			syntaxError("statement has less than 3 tokens");
+
+		checkParenthesis(i, end);
+
+		// print function
+		if (types[i] == TokenType.PRINT) {
+			// parenthesis expected
+			if (types[i + 1] != TokenType.LEFT_PARENTHESIS || types[end - 1] != TokenType.RIGHT_PARENTHESIS)
+				syntaxError("print needs its value in parentheses");
+			statements.add(new Node.Print(lineNo, parseExpression(i + 2, end - 1)));
+			return lineEnd;
+		}
+
+		// if and while statements
+		if (types[i] == TokenType.IF || types[i] == TokenType.WHILE)
+			return parseBlockStatement(i, end, lineEnd, statements);
+
+		// assignment
+		if (types[i + 1] == TokenType.ASSIGN) {
+			if (types[i] != TokenType.IDENTIFIER)
+				syntaxError("only a variable can be assigned");
+			statements.add(new Node.Assign(lineNo, texts[i], parseExpression(i + 2, end)));
+			return lineEnd;
+		}
+
+		// Syntax error
+		syntaxError("statement can not begin with this token");
+		return lineEnd;
+	}
+
+	/**
+	 * Parses the condition of an if or while statement and the lines between
+	 * its curly brackets.
+	 *
+	 * @param i          position of "if" or "while"
+	 * @param end        position of "#" or end of the line
+	 * @param lineEnd    end of the line
+	 * @param statements list to add the statement to
+	 * @return position after the closing curly bracket
+	 * @throws SyntaxException
+	 */
+	private int parseBlockStatement(int i, int end, int lineEnd, ArrayList<Node.Statement> statements)
+			throws SyntaxException {
+		// take the expression inside parenthesis
+		if (types[i + 1] != TokenType.LEFT_PARENTHESIS)
+			syntaxError("condition must be in parentheses");
+		int closing = matchingParenthesis(i + 1, end);
+		if (closing < 0)
+			syntaxError("parentheses of the condition do not match");
+		Node.Expression condition = parseExpression(i + 2, closing);
+		// Curly bracket must be the next token, comments are not allowed on this line
+		if (end != lineEnd || closing + 1 == end || types[closing + 1] != TokenType.LEFT_CURLY_BRACKET)
+			syntaxError("'{' must follow the condition and no comment is allowed on its line");
+		return parseBlockBody(i, closing + 2, condition, statements);
+	}
+
+	/**
+	 * Parses the lines between the curly brackets of an if or while statement.
+	 * When errors are collected, nested bodies are skipped and a body without
+	 * "}" ends with the input.
+	 *
+	 * @param i          position of "if" or "while"
+	 * @param bodyStart  position after "{"
+	 * @param condition  condition of the statement, null if it has an error
+	 * @param statements list to add the statement to
+	 * @return position after the closing curly bracket
+	 * @throws SyntaxException
+	 */
+	private int parseBlockBody(int i, int bodyStart, Node.Expression condition, ArrayList<Node.Statement> statements)
+			throws SyntaxException {
+		// Find closing curly bracket
+		int bodyEnd = bodyStart;
+		while (bodyEnd < size && types[bodyEnd] != TokenType.RIGHT_CURLY_BRACKET) {
+			// Syntax error if nested curly brackets
+			if (types[bodyEnd] == TokenType.LEFT_CURLY_BRACKET) {
+				lineNo = lines[bodyEnd];
+				report("nested curly brackets need --nested");
+				return skipCurlyBrackets(bodyStart - 1);
+			}
+			bodyEnd++;
+		}
+		// If there is no curly bracket error is at the last line
+		if (bodyEnd == size) {
+			lineNo = lineCount - 1;
+			report("'}' is missing");
+		}
+		ArrayList<Node.Statement> body = new ArrayList<Node.Statement>();
+		parseStatements(bodyStart, bodyEnd, body);
+		if (condition != null && types[i] == TokenType.IF)
+			statements.add(new Node.If(lines[i], condition, body));
+		else if (condition != null)
+			statements.add(new Node.While(lines[i], condition, body));
+		return Math.min(bodyEnd + 1, size);
+	}
+
+	/**
+	 * Skips a line with a syntax error. Body of an if or while statement whose
+	 * line has "{" is still parsed, so its errors are found and its "}" is not
+	 * taken as a statement.
+	 *
+	 * @param i          position of the first token of the line
+	 * @param to         position after the last token
+	 * @param statements list the statements are added to
+	 * @return position after the line or the body
+	 * @throws SyntaxException
+	 */
+	private int skipStatement(int i, int to, ArrayList<Node.Statement> statements) throws SyntaxException {
+		int lineEnd = i;
+		while (lineEnd < to && lines[lineEnd] == lines[i] && types[lineEnd] != TokenType.COMMENT)
+			lineEnd++;
+		if (types[i] != TokenType.IF && types[i] != TokenType.WHILE)
+			return skipLine(lineEnd, to);
+		for (int open = i; open < lineEnd; open++) {
+			if (types[open] == TokenType.LEFT_CURLY_BRACKET)
+				return parseBlockBody(i, open + 1, null, statements);
+		}
+		return skipLine(lineEnd, to);
+	}
+
+	/**
+	 * @param i  position of a token
+	 * @param to position after the last token
+	 * @return position of the first token on the next line
+	 */
+	private int skipLine(int i, int to) {
+		int line = lines[i - 1];
+		while (i < to && lines[i] == line)
+			i++;
+		return i;
+	}
+
+	/**
+	 * Skips curly brackets and everything between them, used after nested
+	 * curly brackets without nested blocks.
+	 *
+	 * @param open position of "{"
+	 * @return position after the "}" that closes it, size if there is none
+	 */
+	private int skipCurlyBrackets(int open) {
+		int depth = 0;
+		for (int i = open; i < size; i++) {
+			if (types[i] == TokenType.LEFT_CURLY_BRACKET)
+				depth++;
+			else if (types[i] == TokenType.RIGHT_CURLY_BRACKET && --depth == 0)
+				return i + 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Parses nested bodies in one pass over the tokens. A statement ends at the
+	 * end of its line, at "#" or at a curly bracket, so a body ends at the first
+	 * "}" that starts a statement. Curly brackets after "#" are part of the
+	 * comment. When errors are collected, parsing goes on after the statement
+	 * with the error. A body nested more than MAX_BODY_NESTING levels is an error
+	 * and is skipped.
+	 *
+	 * @param from       position of the first token
+	 * @param statements list to add the statements to
+	 * @return position of the "}" that ends the body, size if the input ends
+	 *         first
+	 * @throws SyntaxException
+	 */
+	private int parseBody(int from, ArrayList<Node.Statement> statements) throws SyntaxException {
+		if (bodyDepth > MAX_BODY_NESTING) {
+			lineNo = lines[from - 1];
+			report("bodies are nested more than " + MAX_BODY_NESTING + " levels");
+			return skipBody(from);
+		}
+		bodyDepth++;
+		try {
+			return parseStatementsOfBody(from, statements);
+		} finally {
+			bodyDepth--;
+		}
+	}
+
+	/**
+	 * Parses the statements of a body until the "}" that ends it.
+	 *
+	 * @param from       position of the first token
+	 * @param statements list to add the statements to
+	 * @return position of the "}" that ends the body, size if the input ends
+	 *         first
+	 * @throws SyntaxException
+	 */
+	private int parseStatementsOfBody(int from, ArrayList<Node.Statement> statements) throws SyntaxException {
+		int i = from;
+		while (i < size) {
+			lineNo = lines[i];
+			// Skip the comment to the end of the line
+			if (types[i] == TokenType.COMMENT) {
+				while (i < size && lines[i] == lineNo)
+					i++;
+				continue;
+			}
+			if (types[i] == TokenType.RIGHT_CURLY_BRACKET)
+				return i;
+			try {
+				i = parseBodyStatement(i, statements);
+			} catch (SyntaxException e) {
+				report(e);
+				i = skipBodyStatement(i);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Skips a body and the bodies in it without recursion. Curly brackets after
+	 * "#" are part of the comment.
+	 *
+	 * @param from position of the first token
+	 * @return position of the "}" that ends the body, size if the input ends
+	 *         first
+	 */
+	private int skipBody(int from) {
+		int depth = 0;
+		int i = from;
+		while (i < size) {
+			if (types[i] == TokenType.COMMENT) {
+				int line = lines[i];
+				while (i < size && lines[i] == line)
+					i++;
+				continue;
+			}
+			if (types[i] == TokenType.LEFT_CURLY_BRACKET)
+				depth++;
+			else if (types[i] == TokenType.RIGHT_CURLY_BRACKET && depth-- == 0)
+				return i;
+			i++;
+		}
+		return size;
+	}
+
+	/**
+	 * Parses one statement of a nested body.
+	 *
+	 * @param i          position of the first token of the statement
+	 * @param statements list to add the statement to
+	 * @return position after the statement
+	 * @throws SyntaxException
+	 */
+	private int parseBodyStatement(int i, ArrayList<Node.Statement> statements) throws SyntaxException {
+		int end = statementEnd(i);
+
+		// a statement must consist of at least 3 tokens
+		if (end - i < 3)
+			syntaxError("statement has less than 3 tokens");
+
+		checkParenthesis(i, end);
+
+		// print function
+		if (types[i] == TokenType.PRINT) {
+			if (types[i + 1] != TokenType.LEFT_PARENTHESIS || types[end - 1] != TokenType.RIGHT_PARENTHESIS)
+				syntaxError("print needs its value in parentheses");
+			statements.add(new Node.Print(lineNo, parseExpression(i + 2, end - 1)));
+			return end;
+		}
+
+		// if and while statements, curly bracket must end the line of the condition
+		if (types[i] == TokenType.IF || types[i] == TokenType.WHILE) {
+			int statementLine = lineNo;
+			if (types[i + 1] != TokenType.LEFT_PARENTHESIS || matchingParenthesis(i + 1, end) != end - 1
+					|| end == size || lines[end] != lineNo || types[end] != TokenType.LEFT_CURLY_BRACKET)
+				syntaxError("condition must be in parentheses and followed by '{'");
+			Node.Expression condition = parseExpression(i + 2, end - 1);
+			ArrayList<Node.Statement> body = new ArrayList<Node.Statement>();
+			int closing = parseBody(end + 1, body);
+			// If there is no curly bracket error is at the last line
+			if (closing == size) {
+				lineNo = lineCount - 1;
+				report("'}' is missing");
+				return size;
+			}
+			if (types[i] == TokenType.IF)
+				statements.add(new Node.If(statementLine, condition, body));
+			else
+				statements.add(new Node.While(statementLine, condition, body));
+			return closing + 1;
+		}
+
+		// assignment
+		if (types[i + 1] == TokenType.ASSIGN) {
+			if (types[i] != TokenType.IDENTIFIER)
+				syntaxError("only a variable can be assigned");
+			statements.add(new Node.Assign(lineNo, texts[i], parseExpression(i + 2, end)));
+			return end;
+		}
+
+		// Syntax error
+		syntaxError("statement can not begin with this token");
+		return end;
+	}
+
+	/**
+	 * Skips a statement of a nested body with a syntax error. If "{" ends it, the
+	 * body after it is still parsed, so its errors are found and its "}" does
+	 * not end the body the statement is in.
+	 *
+	 * @param i position of the first token of the statement
+	 * @return position after the statement or the body
+	 * @throws SyntaxException
+	 */
+	private int skipBodyStatement(int i) throws SyntaxException {
+		int end = statementEnd(i);
+		if (end == size || lines[end] != lines[i] || types[end] != TokenType.LEFT_CURLY_BRACKET)
+			return end;
+		int closing = parseBody(end + 1, new ArrayList<Node.Statement>());
+		if (closing == size) {
+			lineNo = lineCount - 1;
+			report("'}' is missing");
+			return size;
+		}
+		return closing + 1;
+	}
+
+	/**
+	 * @param i position of the first token of a statement in a nested body
+	 * @return position of the end of its line, "#" or the curly bracket that ends
+	 *         it
+	 */
+	private int statementEnd(int i) {
+		int end = i;
+		while (end < size && lines[end] == lines[i] && types[end] != TokenType.COMMENT
+				&& types[end] != TokenType.LEFT_CURLY_BRACKET && types[end] != TokenType.RIGHT_CURLY_BRACKET)
+			end++;
+		return end;
+	}
+
+	/**
+	 * Parses an expression that fills the tokens between two positions.
+	 *
+	 * @param from position of the first token
+	 * @param to   position after the last token
+	 * @return root of the expression
+	 * @throws SyntaxException
+	 */
+	private Node.Expression parseExpression(int from, int to) throws SyntaxException {
+		pos = from;
+		limit = to;
+		expressionDepth = 0;
+		Node.Expression expression = parseOperations(1);
+		// Tokens left after the expression
+		if (pos != limit)
+			syntaxError("operator expected after an operand");
+		return expression;
+	}
+
+	/**
+	 * Parses operands joined by operators with at least the given precedence.
+	 * Operators with the same precedence are joined from left to right in a loop,
+	 * so the depth of recursion only grows with parenthesis and choose functions.
+	 *
+	 * @param minPrecedence 1 to accept every operator, 2 for only "*" and "/"
+	 * @return root of the operations
+	 * @throws SyntaxException
+	 */
+	private Node.Expression parseOperations(int minPrecedence) throws SyntaxException {
+		Node.Expression left = parseOperand();
+		while (pos < limit) {
+			int precedence = precedence(types[pos]);
+			if (precedence < minPrecedence)
+				break;
+			TokenType operator = types[pos++];
+			Node.Expression right = parseOperations(precedence + 1);
+			// Throw syntax error if there is zero division
+			if (operator == TokenType.DIVIDE && right instanceof Node.IntLit
+					&& ((Node.IntLit) right).text.equals("0"))
+				syntaxError("division by 0");
+			left = new Node.BinOp(left.line, operator, left, right);
+		}
+		return left;
+	}
+
+	/**
+	 * Parses a number, negative number, variable, expression in parenthesis or
+	 * choose function.
+	 *
+	 * @return operand node
+	 * @throws SyntaxException
+	 */
+	private Node.Expression parseOperand() throws SyntaxException {
+		if (pos == limit)
+			syntaxError("number or variable expected");
+		int line = lines[pos];
+		switch (types[pos++]) {
+		case NUMBER:
+			return number(pos - 1, texts[pos - 1]);
+		case IDENTIFIER:
+			return new Node.Var(line, texts[pos - 1]);
+		// Negative numbers are one operand
+		case MINUS:
+			if (pos == limit || types[pos] != TokenType.NUMBER)
+				syntaxError("number expected after -");
+			pos++;
+			return number(pos - 1, "-" + texts[pos - 1]);
+		case LEFT_PARENTHESIS:
+			enterOperand();
+			Node.Expression inside = parseOperations(1);
+			expect(TokenType.RIGHT_PARENTHESIS);
+			expressionDepth--;
+			return inside;
+		case CHOOSE:
+			enterOperand();
+			expect(TokenType.LEFT_PARENTHESIS);
+			Node.Expression selector = parseOperations(1);
+			expect(TokenType.COMMA);
+			Node.Expression zero = parseOperations(1);
+			expect(TokenType.COMMA);
+			Node.Expression positive = parseOperations(1);
+			expect(TokenType.COMMA);
+			Node.Expression negative = parseOperations(1);
+			expect(TokenType.RIGHT_PARENTHESIS);
+			expressionDepth--;
+			return new Node.Choose(line, selector, zero, positive, negative);
+		// Keywords, invalid words and other symbols
+		default:
+			syntaxError("number or variable expected");
+			return null;
+		}
+	}
+
+	/**
+	 * Counts one more parenthesis or choose function around the current token.
+	 *
+	 * @throws SyntaxException if there are more than MAX_NESTING
+	 */
+	private void enterOperand() throws SyntaxException {
+		if (++expressionDepth > MAX_NESTING)
+			syntaxError("expression is nested more than " + MAX_NESTING + " levels");
+	}
+
+	/**
+	 * Skips the expected token, calls syntax error if the next token is
+	 * different.
+	 *
+	 * @param type expected token type
+	 * @throws SyntaxException
+	 */
+	private void expect(TokenType type) throws SyntaxException {
+		if (pos == limit || types[pos] != type)
+			syntaxError("'" + type.getText() + "' expected");
+		pos++;
+	}
+
+	/**
+	 * Creates number node, calls syntax error if number is invalid.
+	 *
+	 * @param i    position of the number
+	 * @param text text of the number with its sign
+	 * @return number node
+	 * @throws SyntaxException
+	 */
+	private Node.IntLit number(int i, String text) throws SyntaxException {
+		try {
+			return new Node.IntLit(lines[i], text, Integer.parseInt(text));
+		} catch (NumberFormatException nfe) {
+			syntaxError("number is out of range");
+			return null;
+		}
+	}
+
+	/**
+	 * Calls syntax error if number of opening and closing parenthesis don't match.
+	 *
+	 * @param from position of the first token
+	 * @param to   position after the last token
+	 * @throws SyntaxException
+	 */
+	private void checkParenthesis(int from, int to) throws SyntaxException {
+		int parOpening = 0;
+		for (int i = from; i < to; i++) {
+			if (types[i] == TokenType.LEFT_PARENTHESIS)
+				parOpening++;
+			if (types[i] == TokenType.RIGHT_PARENTHESIS)
+				parOpening--;
+		}
+		if (parOpening != 0)
+			syntaxError("parentheses do not match");
+	}
+
+	/**
+	 * Finds the parenthesis that closes the one at the given position.
+	 *
+	 * @param opening position of the opening parenthesis
+	 * @param to      position after the last token to search
+	 * @return position of the closing parenthesis, -1 if there is none
+	 */
+	private int matchingParenthesis(int opening, int to) {
+		int openingParanthesis = 0;
+		for (int i = opening; i < to; i++) {
+			if (types[i] == TokenType.LEFT_PARENTHESIS)
+				openingParanthesis++;
+			else if (types[i] == TokenType.RIGHT_PARENTHESIS && --openingParanthesis == 0)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param type token type
+	 * @return 2 for "*" and "/", 1 for "+" and "-", 0 for other tokens
+	 */
+	private int precedence(TokenType type) {
+		switch (type) {
+		case MULTIPLY:
+		case DIVIDE:
+			return 2;
+		case PLUS:
+		case MINUS:
+			return 1;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Called when there is a syntax error, parsing of the statement stops.
+	 *
+	 * @param reason what is wrong
+	 * @throws SyntaxException with the line of the statement being parsed
+	 */
+	private void syntaxError(String reason) throws SyntaxException {
+		throw new SyntaxException(lineNo, reason);
+	}
+
+	/**
+	 * Called when there is a syntax error after which parsing can go on.
+	 *
+	 * @param reason what is wrong
+	 * @throws SyntaxException with the line of the statement being parsed, if
+	 *                         errors are not collected
+	 */
+	private void report(String reason) throws SyntaxException {
+		report(new SyntaxException(lineNo, reason));
+	}
+
+	/**
+	 * Collects a syntax error or throws it if errors are not collected. An error
+	 * with the same line and reason as the one before, like "}" missing for every
+	 * open body, is collected once.
+	 *
+	 * @param error syntax error
+	 * @throws SyntaxException the error, if errors are not collected
+	 */
+	private void report(SyntaxException error) throws SyntaxException {
+		if (diagnostics == null)
+			throw error;
+		if (!diagnostics.isEmpty()) {
+			SyntaxException last = diagnostics.get(diagnostics.size() - 1);
+			if (last.getLineNo() == error.getLineNo() && last.getReason().equals(error.getReason()))
+				return;
+		}
+		diagnostics.add(error);
+	}
+}
@@ -0,0 +1,186 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles many mylang files in one JVM. Every file gets its own Parser and
+ * files are compiled in parallel on a work-stealing pool.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class BatchCompiler {
+
+	/**
+	 * Input files in the order they are reported
+	 */
+	private ArrayList<String> inputs = new ArrayList<String>();
+	/**
+	 * Options every file is compiled with
+	 */
+	private Options options;
+
+	/**
+	 * Constructor of the BatchCompiler class, collects input files.
+	 *
+	 * @param specs   directories, glob patterns, list files starting with '@' or
+	 *                input files
+	 * @param options options every file is compiled with
+	 * @throws IOException
+	 */
+	public BatchCompiler(List<String> specs, Options options) throws IOException {
+		this.options = options;
+		LinkedHashSet<String> found = new LinkedHashSet<String>();
+		for (String spec : specs) {
+			collect(spec, found);
+		}
+		inputs.addAll(found);
+	}
+
+	/**
+	 * Compiles every input file and prints failures and a summary.
+	 *
+	 * @return true if every file is compiled without error
+	 */
+	public boolean run() {
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				Main.deepStackThreads("batch"));
+		long start = System.nanoTime();
+		ArrayList<Future<String>> results = new ArrayList<Future<String>>(inputs.size());
+		for (final String input : inputs) {
+			results.add(pool.submit(new Callable<String>() {
+				public String call() {
+					return compileOne(input);
+				}
+			}));
+		}
+		int failures = 0;
+		for (int i = 0; i < inputs.size(); i++) {
+			String error;
+			try {
+				error = results.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = e.toString();
+			} catch (ExecutionException e) {
+				error = e.getCause().toString();
+			}
+			if (error != null) {
+				failures++;
+				System.out.println(inputs.get(i) + ": " + error);
+			}
+		}
+		pool.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Compiled %d files in %.3f s (%.1f files/sec), %d failed", inputs.size(),
+				seconds, inputs.size() / Math.max(seconds, 1e-9), failures));
+		if (options.cache != null)
+			System.out.println(options.cache.summary());
+		if (options.statsTotal != null)
+			System.err.println(options.statsTotal.toJson());
+		return failures == 0;
+	}
+
+	/**
+	 * Compiles one file. Syntax errors still produce the error output file.
+	 *
+	 * @param input path of the input file
+	 * @return null on success, description of the failure otherwise
+	 */
+	private String compileOne(String input) {
+		try {
+			Main.compile(input, options);
+			return null;
+		} catch (SyntaxException e) {
+			return e.getMessage();
+		} catch (IOException e) {
+			return e.toString();
+		} catch (RuntimeException e) {
+			return e.toString();
+		}
+	}
+
+	/**
+	 * Adds the input files described by one command line argument.
+	 *
+	 * @param spec  directory, glob pattern, list file or input file
+	 * @param found set to add the files to
+	 * @throws IOException
+	 */
+	private void collect(String spec, LinkedHashSet<String> found) throws IOException {
+		// List file, one input per line
+		if (spec.startsWith("@")) {
+			for (String line : Files.readAllLines(Paths.get(spec.substring(1)), StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (!line.isEmpty())
+					collect(line, found);
+			}
+		}
+		// Every .my file under the directory
+		else if (new File(spec).isDirectory()) {
+			walk(Paths.get(spec), null, found);
+		}
+		// Glob pattern, walk from the directory before the first wildcard
+		else if (isGlob(spec)) {
+			int wildcard = 0;
+			while (!isGlob(spec.substring(0, wildcard + 1)))
+				wildcard++;
+			int separator = Math.max(spec.lastIndexOf('/', wildcard), spec.lastIndexOf(File.separatorChar, wildcard));
+			Path base = Paths.get(separator < 0 ? "." : spec.substring(0, separator + 1));
+			String pattern = separator < 0 ? base.resolve(spec).toString() : spec;
+			walk(base, base.getFileSystem().getPathMatcher("glob:" + pattern), found);
+		}
+		// Single input file
+		else {
+			found.add(spec);
+		}
+	}
+
+	/**
+	 * Adds files under the directory in sorted order.
+	 *
+	 * @param dir     directory to search
+	 * @param matcher glob matcher, or null to take files ending with ".my"
+	 * @param found   set to add the files to
+	 * @throws IOException
+	 */
+	private void walk(Path dir, PathMatcher matcher, LinkedHashSet<String> found) throws IOException {
+		ArrayList<Path> entries = new ArrayList<Path>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+		try {
+			for (Path entry : stream)
+				entries.add(entry);
+		} finally {
+			stream.close();
+		}
+		Collections.sort(entries);
+		for (Path entry : entries) {
+			if (Files.isDirectory(entry))
+				walk(entry, matcher, found);
+			else if (matcher == null ? entry.toString().endsWith(".my") : matcher.matches(entry))
+				found.add(entry.toString());
+		}
+	}
+
+	/**
+	 * @param spec command line argument
+	 * @return true if argument contains glob wildcards
+	 */
+	private boolean isGlob(String spec) {
+		return spec.indexOf('*') >= 0 || spec.indexOf('?') >= 0 || spec.indexOf('[') >= 0 || spec.indexOf('{') >= 0;
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Compiled mylang program for the Interpreter. Instructions are integers in
+ * one array, an instruction with an operand is followed by it. Variables are
+ * slots in an integer array and operations use a stack of integers.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class Bytecode {
+
+	/**
+	 * Pushes the operand
+	 */
+	public static final int CONST = 0;
+	/**
+	 * Pushes the variable in the slot given by the operand
+	 */
+	public static final int LOAD = 1;
+	/**
+	 * Pops the value and stores it in the slot given by the operand
+	 */
+	public static final int STORE = 2;
+	/**
+	 * Pops the right side and the left side, pushes their sum
+	 */
+	public static final int ADD = 3;
+	/**
+	 * Pops the right side and the left side, pushes their difference
+	 */
+	public static final int SUB = 4;
+	/**
+	 * Pops the right side and the left side, pushes their product
+	 */
+	public static final int MUL = 5;
+	/**
+	 * Pops the right side and the left side, pushes their quotient rounded to 0
+	 */
+	public static final int DIV = 6;
+	/**
+	 * Pops the four arguments of a choose function, pushes the chosen one
+	 */
+	public static final int CHOOSE = 7;
+	/**
+	 * Pops the value and prints it on its own line
+	 */
+	public static final int PRINT = 8;
+	/**
+	 * Jumps to the position given by the operand
+	 */
+	public static final int JUMP = 9;
+	/**
+	 * Pops the value, jumps to the position given by the operand if it is 0
+	 */
+	public static final int JUMP_IF_ZERO = 10;
+	/**
+	 * Ends the program
+	 */
+	public static final int HALT = 11;
+
+	/**
+	 * Instructions and operands
+	 */
+	public final int[] code;
+	/**
+	 * Number of variable slots
+	 */
+	public final int slots;
+	/**
+	 * Largest number of values on the stack
+	 */
+	public final int stackSize;
+
+	/**
+	 * Constructor of the Bytecode class.
+	 *
+	 * @param code      instructions and operands
+	 * @param slots     number of variable slots
+	 * @param stackSize largest number of values on the stack
+	 */
+	public Bytecode(int[] code, int slots, int stackSize) {
+		this.code = code;
+		this.slots = slots;
+		this.stackSize = stackSize;
+	}
+}
@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiles the syntax tree to Bytecode. Every variable gets a slot in order of
+ * first appearance. Expressions are computed like the LLVM code: all arguments
+ * of a choose function are computed before one of them is chosen.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class BytecodeCompiler {
+
+	/**
+	 * Instructions and operands
+	 */
+	private int[] code = new int[256];
+	/**
+	 * Number of integers in code
+	 */
+	private int size = 0;
+	/**
+	 * Slots of the variables
+	 */
+	private HashMap<String, Integer> slots = new HashMap<String, Integer>();
+	/**
+	 * Number of values on the stack at the current instruction
+	 */
+	private int depth = 0;
+	/**
+	 * Largest number of values on the stack
+	 */
+	private int maxDepth = 0;
+	/**
+	 * Operations on the left side of an expression that are waiting for their
+	 * right side
+	 */
+	private Node.Spine spine = new Node.Spine();
+
+	/**
+	 * Compiles the whole program.
+	 *
+	 * @param program program to be compiled
+	 * @return bytecode of the program
+	 */
+	public Bytecode compile(Node.Program program) {
+		for (String var : program.variables)
+			slot(var);
+		compileStatements(program.statements);
+		emit(Bytecode.HALT);
+		return new Bytecode(Arrays.copyOf(code, size), slots.size(), maxDepth);
+	}
+
+	/**
+	 * Compiles statements in order.
+	 *
+	 * @param statements statements of the program or of a curly bracket body
+	 */
+	private void compileStatements(ArrayList<Node.Statement> statements) {
+		for (Node.Statement statement : statements) {
+
+			// print function
+			if (statement instanceof Node.Print) {
+				compileExpression(((Node.Print) statement).value);
+				emit(Bytecode.PRINT);
+				depth--;
+			}
+
+			// if statement, jump over the body if condition is 0
+			else if (statement instanceof Node.If) {
+				Node.If ifStatement = (Node.If) statement;
+				compileExpression(ifStatement.condition);
+				int jump = emit(Bytecode.JUMP_IF_ZERO, 0);
+				depth--;
+				compileStatements(ifStatement.body);
+				code[jump + 1] = size;
+			}
+
+			// while statement, jump back to the condition after the body
+			else if (statement instanceof Node.While) {
+				Node.While whileStatement = (Node.While) statement;
+				int condition = size;
+				compileExpression(whileStatement.condition);
+				int jump = emit(Bytecode.JUMP_IF_ZERO, 0);
+				depth--;
+				compileStatements(whileStatement.body);
+				emit(Bytecode.JUMP, condition);
+				code[jump + 1] = size;
+			}
+
+			// assignment
+			else {
+				Node.Assign assignment = (Node.Assign) statement;
+				compileExpression(assignment.value);
+				emit(Bytecode.STORE, slot(assignment.name));
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Compiles an expression, its value is pushed to the stack.
+	 *
+	 * @param expression expression to be compiled
+	 */
+	private void compileExpression(Node.Expression expression) {
+		if (expression instanceof Node.IntLit) {
+			emit(Bytecode.CONST, ((Node.IntLit) expression).value);
+			push();
+		} else if (expression instanceof Node.Var) {
+			emit(Bytecode.LOAD, slot(((Node.Var) expression).name));
+			push();
+		} else if (expression instanceof Node.Choose) {
+			Node.Choose function = (Node.Choose) expression;
+			compileExpression(function.selector);
+			compileExpression(function.zero);
+			compileExpression(function.positive);
+			compileExpression(function.negative);
+			emit(Bytecode.CHOOSE);
+			depth -= 3;
+		} else {
+			// Operations on the left side are compiled in a loop, from the innermost one
+			int base = spine.size();
+			compileExpression(spine.descend(expression));
+			for (Node.BinOp operation = spine.next(base); operation != null; operation = spine.next(base)) {
+				compileExpression(operation.right);
+				emit(instruction(operation.operator));
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * @param operator PLUS, MINUS, MULTIPLY or DIVIDE
+	 * @return ADD, SUB, MUL or DIV
+	 */
+	private int instruction(TokenType operator) {
+		switch (operator) {
+		case PLUS:
+			return Bytecode.ADD;
+		case MINUS:
+			return Bytecode.SUB;
+		case MULTIPLY:
+			return Bytecode.MUL;
+		default:
+			return Bytecode.DIV;
+		}
+	}
+
+	/**
+	 * @param var variable name
+	 * @return slot of the variable, new variables get the next slot
+	 */
+	private int slot(String var) {
+		Integer slot = slots.get(var);
+		if (slot == null) {
+			slot = slots.size();
+			slots.put(var, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Counts one more value on the stack.
+	 */
+	private void push() {
+		if (++depth > maxDepth)
+			maxDepth = depth;
+	}
+
+	/**
+	 * Appends an instruction without operand.
+	 *
+	 * @param instruction instruction to be appended
+	 * @return position of the instruction
+	 */
+	private int emit(int instruction) {
+		if (size == code.length)
+			code = Arrays.copyOf(code, size * 2);
+		code[size] = instruction;
+		return size++;
+	}
+
+	/**
+	 * Appends an instruction with its operand.
+	 *
+	 * @param instruction instruction to be appended
+	 * @param operand     operand of the instruction
+	 * @return position of the instruction
+	 */
+	private int emit(int instruction, int operand) {
+		int position = emit(instruction);
+		emit(operand);
+		return position;
+	}
+}
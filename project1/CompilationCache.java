@@ -0,0 +1,250 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps LLVM outputs on disk, named by the SHA-256 hash of the input, of the
+ * options that change the output and of the compiler classes. A file whose
+ * hash is in the cache is not parsed, the cached output is written. Only
+ * programs without syntax errors are kept. When the cache is larger than its
+ * limit, least recently used outputs are deleted. Use times are kept as
+ * modification times of the files, so the order is kept between runs. Outputs
+ * are written to a temporary file and moved, so many processes can share one
+ * cache directory.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class CompilationCache {
+
+	/**
+	 * Hash of the compiler classes, outputs of other compiler versions are not
+	 * used
+	 */
+	private static byte[] compilerHash;
+
+	/**
+	 * Directory of the cached outputs
+	 */
+	private Path directory;
+	/**
+	 * Largest total size of the cached outputs in bytes
+	 */
+	private long maxBytes;
+	/**
+	 * Size of each cached output by its hash, least recently used first
+	 */
+	private LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	/**
+	 * Total size of the cached outputs
+	 */
+	private long totalBytes = 0;
+	/**
+	 * Number of outputs found in the cache
+	 */
+	private int hits = 0;
+	/**
+	 * Number of outputs not found in the cache
+	 */
+	private int misses = 0;
+
+	/**
+	 * Constructor of the CompilationCache class, reads the cached outputs in
+	 * order of use.
+	 *
+	 * @param directory directory of the cached outputs, created if it does not
+	 *                  exist
+	 * @param maxBytes  largest total size of the cached outputs in bytes
+	 * @throws IOException
+	 */
+	public CompilationCache(String directory, long maxBytes) throws IOException {
+		this.directory = Files.createDirectories(Paths.get(directory));
+		this.maxBytes = maxBytes;
+
+		final ArrayList<Path> files = new ArrayList<Path>();
+		final Map<Path, Long> used = new LinkedHashMap<Path, Long>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*.ll");
+		try {
+			for (Path file : stream) {
+				files.add(file);
+				used.put(file, Files.getLastModifiedTime(file).toMillis());
+			}
+		} finally {
+			stream.close();
+		}
+		Collections.sort(files, new Comparator<Path>() {
+			public int compare(Path a, Path b) {
+				return Long.compare(used.get(a), used.get(b));
+			}
+		});
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			long size = Files.size(file);
+			entries.put(name.substring(0, name.length() - 3), size);
+			totalBytes += size;
+		}
+		evict();
+	}
+
+	/**
+	 * @param input   contents of the input file, its position is not changed
+	 * @param options options of the output
+	 * @return hash of the input, the options and the compiler
+	 */
+	public String key(ByteBuffer input, Options options) {
+		MessageDigest digest = sha256();
+		digest.update(compilerHash());
+		digest.update(options.outputKey().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(input.duplicate());
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest())
+			hex.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+		return hex.toString();
+	}
+
+	/**
+	 * Reads a cached output and marks it as used. Outputs that other processes
+	 * wrote are added to the total size.
+	 *
+	 * @param key hash of the input
+	 * @return cached output, null if it is not in the cache
+	 * @throws IOException
+	 */
+	public byte[] get(String key) throws IOException {
+		Path file = directory.resolve(key + ".ll");
+		byte[] output;
+		try {
+			output = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			synchronized (this) {
+				// Deleted by another process
+				Long size = entries.remove(key);
+				if (size != null)
+					totalBytes -= size;
+				misses++;
+			}
+			return null;
+		}
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// Order of use is only a hint
+		}
+		synchronized (this) {
+			// Written by another process after this cache was read
+			if (entries.get(key) == null) {
+				entries.put(key, (long) output.length);
+				totalBytes += output.length;
+				evict();
+			}
+			hits++;
+		}
+		return output;
+	}
+
+	/**
+	 * Adds an output to the cache and deletes least recently used outputs if the
+	 * cache is too large.
+	 *
+	 * @param key    hash of the input
+	 * @param output LLVM code of the input
+	 * @throws IOException
+	 */
+	public void put(String key, Emitter output) throws IOException {
+		Path file = directory.resolve(key + ".ll");
+		Path temporary = Files.createTempFile(directory, key, ".tmp");
+		try {
+			output.writeTo(temporary.toString());
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		synchronized (this) {
+			Long old = entries.put(key, (long) output.size());
+			totalBytes += output.size() - (old == null ? 0 : old);
+			evict();
+		}
+	}
+
+	/**
+	 * @return number of outputs found in the cache and number of outputs not
+	 *         found
+	 */
+	public synchronized String summary() {
+		return hits + " cache hits, " + misses + " misses";
+	}
+
+	/**
+	 * Deletes least recently used outputs until the cache is not larger than its
+	 * limit.
+	 *
+	 * @throws IOException
+	 */
+	private synchronized void evict() throws IOException {
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			Files.deleteIfExists(directory.resolve(eldest.getKey() + ".ll"));
+			totalBytes -= eldest.getValue();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Hashes the jar file or the class files the compiler is loaded from, once.
+	 *
+	 * @return hash of the compiler
+	 */
+	private static synchronized byte[] compilerHash() {
+		if (compilerHash == null) {
+			MessageDigest digest = sha256();
+			try {
+				File location = new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+				File[] files = location.isDirectory() ? location.listFiles() : new File[] { location };
+				Arrays.sort(files);
+				for (File file : files) {
+					if (file == location || file.getName().endsWith(".class")) {
+						digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+						digest.update(Files.readAllBytes(file.toPath()));
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("can not read the compiler classes", e);
+			} catch (URISyntaxException e) {
+				throw new IllegalStateException("can not find the compiler classes", e);
+			}
+			compilerHash = digest.digest();
+		}
+		return compilerHash;
+	}
+
+	/**
+	 * @return new SHA-256 digest
+	 */
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
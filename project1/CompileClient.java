@@ -0,0 +1,100 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Sends a file to a running CompileDaemon and writes the LLVM code it returns
+ * like Main does. If no daemon is listening, or the daemon closes the
+ * connection before it answers, the file is translated in this JVM.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class CompileClient {
+
+	/**
+	 * Connects to a daemon.
+	 *
+	 * @param address path of the Unix domain socket
+	 * @return connection, null if no daemon is listening
+	 */
+	public static SocketChannel connect(String address) {
+		if (!Files.exists(Paths.get(address)))
+			return null;
+		try {
+			SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+			try {
+				channel.connect(UnixDomainSocketAddress.of(address));
+				return channel;
+			} catch (IOException e) {
+				channel.close();
+				return null;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Translates one file with the daemon, or in this JVM if there is no daemon
+	 * or the connection is lost.
+	 *
+	 * @param address   path of the Unix domain socket
+	 * @param inputPath path of the input file
+	 * @param options   options of the output
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the output
+	 */
+	public static void compile(String address, String inputPath, Options options) throws IOException, SyntaxException {
+		SocketChannel channel = connect(address);
+		if (channel == null) {
+			Main.compile(inputPath, options);
+			return;
+		}
+
+		String outputPath = inputPath.substring(0, inputPath.length() - 3) + ".ll";
+		byte[] body;
+		String[] status;
+		try {
+			OutputStream request = Channels.newOutputStream(channel);
+			String path = new File(inputPath).getAbsolutePath();
+			String flags = (options.ssa ? "--ssa " : "") + (options.nested ? "--nested " : "")
+					+ (options.bufferedPrint ? "--buffered-print " : "") + (options.profile ? "--profile " : "");
+			request.write(("path " + flags + path + "\n").getBytes(StandardCharsets.UTF_8));
+			request.flush();
+
+			InputStream response = new BufferedInputStream(Channels.newInputStream(channel));
+			String header = CompileDaemon.readLine(response);
+			if (header == null)
+				throw new IOException("daemon closed the connection");
+			status = header.split(" ");
+			body = CompileDaemon.readBytes(response, Integer.parseInt(status[1]));
+		} catch (IOException e) {
+			System.err.println("daemon at " + address + " did not answer (" + e.getMessage() + "), translating here");
+			Main.compile(inputPath, options);
+			return;
+		} finally {
+			channel.close();
+		}
+
+		if (status[0].equals("failed"))
+			throw new IOException(new String(body, StandardCharsets.UTF_8));
+		Emitter out = new Emitter();
+		out.append(body);
+		if (options.toStdout)
+			out.writeTo(System.out);
+		else
+			out.writeTo(outputPath);
+		if (status[0].equals("syntax-error"))
+			throw new SyntaxException(Integer.parseInt(status[2]));
+	}
+}
@@ -0,0 +1,311 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the translator in a running JVM and translates programs sent over a
+ * Unix domain socket or standard input, so the JIT compiler stays warm. Every
+ * request gets its own Parser and output buffer. Connections are served on
+ * threads with the stack of Main, so deep programs are translated like on the
+ * command line, and requests of one connection are answered in order. A
+ * request that can not be translated gets a failed response and the
+ * connection goes on. The protocol is made of
+ * lines with a header and a body of known length:
+ *
+ * <pre>
+ * request:  "path [--ssa] [--nested] [--buffered-print] [--profile] PATH\n"
+ *           "source [--ssa] [--nested] [--buffered-print] [--profile] LENGTH\n" followed by LENGTH bytes of mylang code
+ *           "stop\n" to stop the daemon
+ * response: "ok LENGTH\n" followed by the LLVM code
+ *           "syntax-error LENGTH LINE\n" followed by the LLVM code of the error
+ *           program
+ *           "failed LENGTH\n" followed by the error message
+ * </pre>
+ *
+ * @author Atilla Türkmen
+ */
+
+public class CompileDaemon {
+
+	/**
+	 * Number of times the warm-up program is translated before requests are
+	 * served
+	 */
+	private static final int WARM_UP = 300;
+	/**
+	 * Longest header line a request can have
+	 */
+	private static final int MAX_HEADER = 1 << 16;
+
+	/**
+	 * Options of the daemon, cache is shared by every request
+	 */
+	private Options options;
+	/**
+	 * Listening socket, null if requests are read from standard input
+	 */
+	private volatile ServerSocketChannel server;
+
+	/**
+	 * Constructor of the CompileDaemon class.
+	 *
+	 * @param options options of the daemon
+	 */
+	public CompileDaemon(Options options) {
+		this.options = options;
+	}
+
+	/**
+	 * Serves requests until "stop" is received or standard input ends.
+	 *
+	 * @param address path of the Unix domain socket, or "-" for standard input
+	 *                and output
+	 * @throws IOException
+	 */
+	public void serve(String address) throws IOException {
+		warmUp();
+
+		// One client on standard input and output
+		if (address.equals("-")) {
+			serveConnection(new BufferedInputStream(System.in), new BufferedOutputStream(System.out));
+			return;
+		}
+
+		Path path = Paths.get(address);
+		if (CompileClient.connect(address) != null)
+			throw new IOException("a daemon is already listening on " + address);
+		Files.deleteIfExists(path);
+		server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(path));
+		System.err.println("listening on " + address);
+		ExecutorService executor = Executors.newCachedThreadPool(Main.deepStackThreads("connection"));
+		try {
+			while (true) {
+				final SocketChannel client;
+				try {
+					client = server.accept();
+				} catch (IOException e) {
+					// Socket is closed by "stop"
+					if (!server.isOpen())
+						break;
+					throw e;
+				}
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							serveConnection(new BufferedInputStream(Channels.newInputStream(client)),
+									new BufferedOutputStream(Channels.newOutputStream(client)));
+						} catch (IOException e) {
+							// Client went away, other connections are served
+						} finally {
+							try {
+								client.close();
+							} catch (IOException e) {
+							}
+						}
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			server.close();
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * Answers the requests of one connection in order.
+	 *
+	 * @param in  requests
+	 * @param out responses
+	 * @throws IOException
+	 */
+	private void serveConnection(InputStream in, OutputStream out) throws IOException {
+		Emitter output = new Emitter();
+		String header;
+		while ((header = readLine(in)) != null) {
+			if (header.equals("stop")) {
+				writeResponse(out, "ok", output, 0);
+				if (server != null)
+					server.close();
+				return;
+			}
+			String[] words = header.split(" ", -1);
+			Options request = new Options();
+			request.cache = options.cache;
+			request.jobs = options.jobs;
+			ByteBuffer input;
+			try {
+				int i = 1;
+				while (i < words.length - 1 && words[i].startsWith("--")) {
+					if (words[i].equals("--ssa"))
+						request.ssa = true;
+					else if (words[i].equals("--nested"))
+						request.nested = true;
+					else if (words[i].equals("--buffered-print"))
+						request.bufferedPrint = true;
+					else if (words[i].equals("--profile"))
+						request.profile = true;
+					else
+						throw new IllegalArgumentException("unknown option " + words[i]);
+					i++;
+				}
+				String argument = join(words, i);
+				if (words[0].equals("path"))
+					input = Lexer.read(argument);
+				else if (words[0].equals("source"))
+					input = ByteBuffer.wrap(readBytes(in, Integer.parseInt(argument)));
+				else
+					throw new IllegalArgumentException("unknown request: " + header);
+			} catch (IOException | IllegalArgumentException e) {
+				writeFailure(out, output, e.toString());
+				// Body of a bad source request can not be skipped
+				if (!words[0].equals("path"))
+					return;
+				continue;
+			}
+
+			try {
+				Main.translate(input, request, output);
+				writeResponse(out, "ok", output, output.size());
+			} catch (SyntaxException e) {
+				writeResponse(out, "syntax-error", output, output.size(), e.getLineNo());
+			} catch (IOException | RuntimeException | StackOverflowError e) {
+				writeFailure(out, output, e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Translates a generated program many times, so requests are served by
+	 * compiled code.
+	 */
+	private void warmUp() {
+		StringBuilder program = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			program.append("n = 0\nwhile (").append(i + 3).append(" - n) {\n");
+			program.append("x").append(i).append(" = x").append(i).append(" * (n + ").append(i)
+					.append(") - choose(n - 2, x, 1, -").append(i).append(") / 3\n");
+			program.append("n = n + 1\n}\nif (x").append(i).append(") {\nprint(x").append(i).append(" + n)\n}\n");
+		}
+		byte[] input = program.toString().getBytes(StandardCharsets.UTF_8);
+		Options warmUpOptions = new Options();
+		Emitter output = new Emitter();
+		for (int i = 0; i < WARM_UP; i++) {
+			warmUpOptions.ssa = i % 2 == 1;
+			try {
+				Main.translate(ByteBuffer.wrap(input), warmUpOptions, output);
+			} catch (IOException | SyntaxException e) {
+				throw new IllegalStateException("warm-up program can not be translated", e);
+			}
+		}
+	}
+
+	/**
+	 * Writes an error message as a response.
+	 *
+	 * @param out     responses
+	 * @param output  buffer for the message
+	 * @param message error message
+	 * @throws IOException
+	 */
+	private void writeFailure(OutputStream out, Emitter output, String message) throws IOException {
+		output.reset();
+		output.append(message);
+		writeResponse(out, "failed", output, output.size());
+	}
+
+	/**
+	 * Writes a response header and its body.
+	 *
+	 * @param out    responses
+	 * @param status ok, syntax-error or failed
+	 * @param body   body of the response
+	 * @param length number of bytes of the body
+	 * @param extra  numbers written after the length
+	 * @throws IOException
+	 */
+	private static void writeResponse(OutputStream out, String status, Emitter body, int length, int... extra)
+			throws IOException {
+		StringBuilder header = new StringBuilder(status).append(' ').append(length);
+		for (int number : extra)
+			header.append(' ').append(number);
+		out.write(header.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+		if (length > 0)
+			body.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Reads one line without the line feed.
+	 *
+	 * @param in stream to read from
+	 * @return the line, null if the stream ended before it
+	 * @throws IOException if the line is too long
+	 */
+	static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b < 0)
+				return line.size() == 0 ? null : line.toString("UTF-8");
+			if (line.size() == MAX_HEADER)
+				throw new IOException("header is too long");
+			line.write(b);
+		}
+		return line.toString("UTF-8");
+	}
+
+	/**
+	 * Reads a body of known length.
+	 *
+	 * @param in     stream to read from
+	 * @param length number of bytes
+	 * @return the bytes
+	 * @throws IOException if the stream ends before them
+	 */
+	static byte[] readBytes(InputStream in, int length) throws IOException {
+		if (length < 0)
+			throw new IllegalArgumentException("negative length " + length);
+		byte[] bytes = new byte[length];
+		int read = 0;
+		while (read < length) {
+			int n = in.read(bytes, read, length - read);
+			if (n < 0)
+				throw new EOFException("stream ended after " + read + " of " + length + " bytes");
+			read += n;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param words words of a header
+	 * @param from  first word of the argument
+	 * @return words from the given one joined with spaces, paths can have spaces
+	 */
+	private static String join(String[] words, int from) {
+		StringBuilder argument = new StringBuilder();
+		for (int i = from; i < words.length; i++) {
+			if (i > from)
+				argument.append(' ');
+			argument.append(words[i]);
+		}
+		return argument.toString();
+	}
+}
@@ -0,0 +1,372 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Time, allocated bytes and counters of translations, written as JSON by
+ * "--stats". Every file gets its own object on the thread that translates it,
+ * then it is added to the total of the run. Main only calls it when the option
+ * is given, so translations without it do not pay for it.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class CompileStats {
+
+	/**
+	 * Reading the input file
+	 */
+	public static final int READ = 0;
+	/**
+	 * Looking the output up in the cache
+	 */
+	public static final int CACHE = 1;
+	/**
+	 * Lexing and building the syntax tree
+	 */
+	public static final int PARSE = 2;
+	/**
+	 * Constant folding
+	 */
+	public static final int FOLD = 3;
+	/**
+	 * Dead store elimination
+	 */
+	public static final int DEAD_STORES = 4;
+	/**
+	 * Starting lines and initializeVars
+	 */
+	public static final int INITIALIZE_VARS = 5;
+	/**
+	 * produceOutput and ending lines
+	 */
+	public static final int CODEGEN = 6;
+	/**
+	 * Writing the output
+	 */
+	public static final int WRITE = 7;
+
+	/**
+	 * Names of the phases in the report
+	 */
+	private static final String[] PHASES = { "read", "cache", "parse", "fold", "deadStores", "initializeVars",
+			"codegen", "write" };
+	/**
+	 * Thread MXBean that counts allocated bytes, null if the JVM can not count
+	 * them
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+	/**
+	 * Nanoseconds spent in each phase
+	 */
+	private long[] nanos = new long[PHASES.length];
+	/**
+	 * Bytes allocated in each phase
+	 */
+	private long[] bytes = new long[PHASES.length];
+	/**
+	 * Time when the current phase began
+	 */
+	private long markNanos;
+	/**
+	 * Allocated bytes of the thread when the current phase began
+	 */
+	private long markBytes;
+
+	/**
+	 * Number of translated files
+	 */
+	private long files = 0;
+	/**
+	 * Number of files with syntax errors
+	 */
+	private long syntaxErrors = 0;
+	/**
+	 * Number of outputs found in the cache
+	 */
+	private long cacheHits = 0;
+	/**
+	 * Number of input lines
+	 */
+	private long lines = 0;
+	/**
+	 * Number of input tokens
+	 */
+	private long tokens = 0;
+	/**
+	 * Number of variables
+	 */
+	private long variables = 0;
+	/**
+	 * Number of statements after optimizations
+	 */
+	private long statements = 0;
+	/**
+	 * Number of choose functions after optimizations
+	 */
+	private long chooses = 0;
+	/**
+	 * Number of LLVM instructions
+	 */
+	private long instructions = 0;
+	/**
+	 * Number of temporary variables
+	 */
+	private long temporaries = 0;
+	/**
+	 * Number of if statements that got labels
+	 */
+	private long ifLabels = 0;
+	/**
+	 * Number of while statements that got labels
+	 */
+	private long whileLabels = 0;
+	/**
+	 * Size of the outputs
+	 */
+	private long outputBytes = 0;
+	/**
+	 * Largest number of values an expression needs on a stack
+	 */
+	private long maxExpressionDepth = 0;
+	/**
+	 * Operations on the left side of an expression that are waiting for their
+	 * right side
+	 */
+	private Node.Spine spine = new Node.Spine();
+
+	/**
+	 * Begins the first phase of a file.
+	 */
+	public void start() {
+		files++;
+		restart();
+	}
+
+	/**
+	 * Ends a phase and begins the next one.
+	 *
+	 * @param phase phase that ended
+	 */
+	public void phase(int phase) {
+		long now = System.nanoTime();
+		long allocated = allocatedBytes();
+		nanos[phase] += now - markNanos;
+		bytes[phase] += allocated - markBytes;
+		markNanos = now;
+		markBytes = allocated;
+	}
+
+	/**
+	 * @param phase phase of the translation
+	 * @return nanoseconds spent in the phase
+	 */
+	public long nanos(int phase) {
+		return nanos[phase];
+	}
+
+	/**
+	 * Counts an output that is found in the cache.
+	 */
+	public void countCacheHit() {
+		cacheHits++;
+	}
+
+	/**
+	 * Counts an input with a syntax error.
+	 */
+	public void countSyntaxError() {
+		syntaxErrors++;
+	}
+
+	/**
+	 * Counts lines and tokens of the input.
+	 *
+	 * @param builder builder that read the input
+	 */
+	public void countInput(AstBuilder builder) {
+		lines += builder.getLineCount();
+		tokens += builder.getTokenCount();
+	}
+
+	/**
+	 * Counts variables, statements, choose functions and the deepest expression
+	 * of the program that is translated.
+	 *
+	 * @param program optimized program
+	 */
+	public void countProgram(Node.Program program) {
+		variables += program.variables.size();
+		countStatements(program.statements);
+		restart();
+	}
+
+	/**
+	 * Counts temporary variables, labels and instructions of the output.
+	 *
+	 * @param parser parser that produced the output
+	 * @param out    LLVM code
+	 */
+	public void countOutput(Parser parser, Emitter out) {
+		temporaries += parser.getTempNo();
+		ifLabels += parser.getIfNo();
+		whileLabels += parser.getWhileNo();
+		instructions += out.countInstructions();
+		outputBytes += out.size();
+		restart();
+	}
+
+	/**
+	 * Begins the next phase again, so counting is not added to any phase.
+	 */
+	private void restart() {
+		markNanos = System.nanoTime();
+		markBytes = allocatedBytes();
+	}
+
+	/**
+	 * Adds the counters of a file to the total.
+	 *
+	 * @param file counters of one file
+	 */
+	public synchronized void add(CompileStats file) {
+		for (int i = 0; i < PHASES.length; i++) {
+			nanos[i] += file.nanos[i];
+			bytes[i] += file.bytes[i];
+		}
+		files += file.files;
+		syntaxErrors += file.syntaxErrors;
+		cacheHits += file.cacheHits;
+		lines += file.lines;
+		tokens += file.tokens;
+		variables += file.variables;
+		statements += file.statements;
+		chooses += file.chooses;
+		instructions += file.instructions;
+		temporaries += file.temporaries;
+		ifLabels += file.ifLabels;
+		whileLabels += file.whileLabels;
+		outputBytes += file.outputBytes;
+		maxExpressionDepth = Math.max(maxExpressionDepth, file.maxExpressionDepth);
+	}
+
+	/**
+	 * @return report as one JSON object
+	 */
+	public synchronized String toJson() {
+		StringBuilder json = new StringBuilder("{\"files\":").append(files);
+		json.append(",\"syntaxErrors\":").append(syntaxErrors);
+		json.append(",\"cacheHits\":").append(cacheHits);
+		json.append(",\"phases\":{");
+		long totalNanos = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < PHASES.length; i++) {
+			if (i > 0)
+				json.append(',');
+			json.append('"').append(PHASES[i]).append("\":{\"ms\":").append(milliseconds(nanos[i]))
+					.append(",\"allocatedBytes\":").append(bytes[i]).append('}');
+			totalNanos += nanos[i];
+			totalBytes += bytes[i];
+		}
+		json.append("},\"totalMs\":").append(milliseconds(totalNanos));
+		json.append(",\"allocatedBytes\":").append(THREADS == null ? -1 : totalBytes);
+		json.append(",\"lines\":").append(lines);
+		json.append(",\"tokens\":").append(tokens);
+		json.append(",\"variables\":").append(variables);
+		json.append(",\"statements\":").append(statements);
+		json.append(",\"chooses\":").append(chooses);
+		json.append(",\"maxExpressionDepth\":").append(maxExpressionDepth);
+		json.append(",\"instructions\":").append(instructions);
+		json.append(",\"temporaries\":").append(temporaries);
+		json.append(",\"ifLabels\":").append(ifLabels);
+		json.append(",\"whileLabels\":").append(whileLabels);
+		json.append(",\"outputBytes\":").append(outputBytes);
+		return json.append('}').toString();
+	}
+
+	/**
+	 * Counts statements and expressions of a body.
+	 *
+	 * @param body statements of the program or of a curly bracket body
+	 */
+	private void countStatements(ArrayList<Node.Statement> body) {
+		for (Node.Statement statement : body) {
+			statements++;
+			if (statement instanceof Node.Print) {
+				countExpression(((Node.Print) statement).value);
+			} else if (statement instanceof Node.If) {
+				countExpression(((Node.If) statement).condition);
+				countStatements(((Node.If) statement).body);
+			} else if (statement instanceof Node.While) {
+				countExpression(((Node.While) statement).condition);
+				countStatements(((Node.While) statement).body);
+			} else {
+				countExpression(((Node.Assign) statement).value);
+			}
+		}
+	}
+
+	/**
+	 * Counts choose functions and keeps the deepest expression.
+	 *
+	 * @param expression expression of a statement
+	 */
+	private void countExpression(Node.Expression expression) {
+		maxExpressionDepth = Math.max(maxExpressionDepth, depth(expression));
+	}
+
+	/**
+	 * Finds the number of values on the stack when the expression is computed
+	 * from left to right, and counts its choose functions.
+	 *
+	 * @param expression expression to be searched
+	 * @return largest number of values on the stack
+	 */
+	private int depth(Node.Expression expression) {
+		if (expression instanceof Node.Choose) {
+			Node.Choose function = (Node.Choose) expression;
+			chooses++;
+			int depth = depth(function.selector);
+			depth = Math.max(depth, 1 + depth(function.zero));
+			depth = Math.max(depth, 2 + depth(function.positive));
+			return Math.max(depth, 3 + depth(function.negative));
+		}
+		if (!(expression instanceof Node.BinOp))
+			return 1;
+
+		// Operations on the left side are searched in a loop, from the innermost one
+		int base = spine.size();
+		int depth = depth(spine.descend(expression));
+		for (Node.BinOp operation = spine.next(base); operation != null; operation = spine.next(base))
+			depth = Math.max(depth, 1 + depth(operation.right));
+		return depth;
+	}
+
+	/**
+	 * @param nanos nanoseconds
+	 * @return milliseconds with three decimals, with a dot in every locale
+	 */
+	private static String milliseconds(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	/**
+	 * @return bytes allocated by the current thread, 0 if they are not counted
+	 */
+	private static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return thread MXBean that counts allocated bytes, null if there is none
+	 */
+	private static com.sun.management.ThreadMXBean threads() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+			return (com.sun.management.ThreadMXBean) threads;
+		return null;
+	}
+}
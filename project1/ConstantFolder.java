@@ -0,0 +1,283 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Replaces operations on numbers with their results and variables with their
+ * values where the values are known at compile time. All variables start with
+ * 0, an assignment of a number makes the value of its variable known, other
+ * assignments make it unknown. After an if statement only the values that are
+ * the same with and without the body stay known, a while statement is walked
+ * until the values at its condition stop changing. Choose functions with a
+ * known first argument are replaced by the chosen argument unless another
+ * argument has a division that can trap, if and while statements whose
+ * condition is 0 are removed and the bodies of if statements whose condition
+ * is never 0 are put in place of them.
+ *
+ * Divisions by 0 and -2147483648 / -1 are not folded so that they behave the
+ * same at run time. Division by the number 0 is already a syntax error.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class ConstantFolder {
+
+	/**
+	 * Values of variables that are known at the current statement
+	 */
+	private HashMap<String, Integer> known = new HashMap<String, Integer>();
+	/**
+	 * Values known at the condition of each while statement the last time it was
+	 * walked. A loop in the body of another loop is walked again each time the
+	 * outer loop is, and its search starts from these values, so nested loops do
+	 * not take exponential time.
+	 */
+	private IdentityHashMap<Node.While, HashMap<String, Integer>> knownAtConditions = new IdentityHashMap<Node.While, HashMap<String, Integer>>();
+	/**
+	 * Folded while statement of each while statement the last time it was
+	 * walked, null if it was removed. When the loop is walked again with the
+	 * same values at its condition it folds the same way, so deeply nested
+	 * loops are not walked again at every level.
+	 */
+	private IdentityHashMap<Node.While, Node.While> foldedLoops = new IdentityHashMap<Node.While, Node.While>();
+	/**
+	 * Operations on the left side of an expression that are waiting for their
+	 * right side
+	 */
+	private Node.Spine spine = new Node.Spine();
+
+	/**
+	 * Folds the whole program.
+	 *
+	 * @param program program built by AstBuilder
+	 * @return program with the same variables and folded statements
+	 */
+	public Node.Program fold(Node.Program program) {
+		known.clear();
+		knownAtConditions.clear();
+		foldedLoops.clear();
+		for (String var : program.variables)
+			known.put(var, 0);
+		return new Node.Program(foldStatements(program.statements), program.variables);
+	}
+
+	/**
+	 * Folds the next part of a program that is translated in parts. Values known
+	 * at the end of the previous part are kept.
+	 *
+	 * @param part part built by AstBuilder, its variables are the ones that do
+	 *             not appear in the parts before
+	 * @return part with the same variables and folded statements
+	 */
+	public Node.Program foldPart(Node.Program part) {
+		knownAtConditions.clear();
+		foldedLoops.clear();
+		for (String var : part.variables)
+			known.put(var, 0);
+		return new Node.Program(foldStatements(part.statements), part.variables);
+	}
+
+	/**
+	 * Folds statements in order, values of variables are updated after each one.
+	 *
+	 * @param statements statements of the program or of a curly bracket body
+	 * @return folded statements
+	 */
+	private ArrayList<Node.Statement> foldStatements(ArrayList<Node.Statement> statements) {
+		ArrayList<Node.Statement> folded = new ArrayList<Node.Statement>(statements.size());
+		for (Node.Statement statement : statements)
+			foldStatement(statement, folded);
+		return folded;
+	}
+
+	/**
+	 * Folds one statement.
+	 *
+	 * @param statement statement to be folded
+	 * @param folded    list to add the folded statements to
+	 */
+	private void foldStatement(Node.Statement statement, ArrayList<Node.Statement> folded) {
+
+		// print function
+		if (statement instanceof Node.Print) {
+			Node.Print print = (Node.Print) statement;
+			Node.Expression value = foldExpression(print.value);
+			folded.add(value == print.value ? print : new Node.Print(print.line, value));
+		}
+
+		// if statement
+		else if (statement instanceof Node.If) {
+			Node.If ifStatement = (Node.If) statement;
+			Node.Expression condition = foldExpression(ifStatement.condition);
+			if (condition instanceof Node.IntLit) {
+				// Body is never or always run
+				if (((Node.IntLit) condition).value != 0)
+					folded.addAll(foldStatements(ifStatement.body));
+				return;
+			}
+			HashMap<String, Integer> before = new HashMap<String, Integer>(known);
+			ArrayList<Node.Statement> body = foldStatements(ifStatement.body);
+			meet(before);
+			folded.add(new Node.If(ifStatement.line, condition, body));
+		}
+
+		// while statement
+		else if (statement instanceof Node.While) {
+			Node.While whileStatement = (Node.While) statement;
+			// Values only become unknown as an outer loop is walked again
+			HashMap<String, Integer> found = knownAtConditions.get(whileStatement);
+			if (found != null) {
+				meet(found);
+				if (known.equals(found)) {
+					Node.While last = foldedLoops.get(whileStatement);
+					if (last != null)
+						folded.add(last);
+					return;
+				}
+			}
+			// Values at the condition are the ones before the loop and after the body
+			HashMap<String, Integer> atCondition;
+			Node.Expression condition;
+			ArrayList<Node.Statement> body;
+			while (true) {
+				atCondition = new HashMap<String, Integer>(known);
+				condition = foldExpression(whileStatement.condition);
+				body = null;
+				if (!(condition instanceof Node.IntLit) || ((Node.IntLit) condition).value != 0)
+					body = foldStatements(whileStatement.body);
+				meet(atCondition);
+				if (known.equals(atCondition))
+					break;
+			}
+			knownAtConditions.put(whileStatement, atCondition);
+			// Loop ends at the condition, body of the last walk has the final values
+			known = new HashMap<String, Integer>(atCondition);
+			Node.While loop = body == null ? null : new Node.While(whileStatement.line, condition, body);
+			foldedLoops.put(whileStatement, loop);
+			if (loop != null)
+				folded.add(loop);
+		}
+
+		// assignment
+		else {
+			Node.Assign assignment = (Node.Assign) statement;
+			Node.Expression value = foldExpression(assignment.value);
+			if (value instanceof Node.IntLit)
+				known.put(assignment.name, ((Node.IntLit) value).value);
+			else
+				known.remove(assignment.name);
+			folded.add(value == assignment.value ? assignment
+					: new Node.Assign(assignment.line, assignment.name, value));
+		}
+	}
+
+	/**
+	 * Keeps only the known values that are the same in the other values.
+	 *
+	 * @param other values of variables on the other path
+	 */
+	private void meet(HashMap<String, Integer> other) {
+		known.entrySet().retainAll(other.entrySet());
+	}
+
+	/**
+	 * Folds an expression with the known values of variables.
+	 *
+	 * @param expression expression to be folded
+	 * @return number node if the value is known, folded expression otherwise
+	 */
+	private Node.Expression foldExpression(Node.Expression expression) {
+		if (expression instanceof Node.Var) {
+			Integer value = known.get(((Node.Var) expression).name);
+			return value == null ? expression : number(expression.line, value);
+		}
+
+		if (expression instanceof Node.Choose) {
+			Node.Choose function = (Node.Choose) expression;
+			Node.Expression selector = foldExpression(function.selector);
+			Node.Expression[] arguments = { foldExpression(function.zero), foldExpression(function.positive),
+					foldExpression(function.negative) };
+			if (selector instanceof Node.IntLit) {
+				int value = ((Node.IntLit) selector).value;
+				int chosen = value == 0 ? 0 : value > 0 ? 1 : 2;
+				// Every argument is computed, one that can trap is not removed
+				boolean trap = false;
+				for (int i = 0; i < arguments.length; i++)
+					trap |= i != chosen && Node.canTrap(arguments[i]);
+				if (!trap)
+					return arguments[chosen];
+			}
+			return new Node.Choose(function.line, selector, arguments[0], arguments[1], arguments[2]);
+		}
+
+		if (expression instanceof Node.BinOp) {
+			// Operations on the left side are folded in a loop, from the innermost one
+			int base = spine.size();
+			Node.Expression left = foldExpression(spine.descend(expression));
+			for (Node.BinOp operation = spine.next(base); operation != null; operation = spine.next(base))
+				left = foldOperation(operation, left, foldExpression(operation.right));
+			return left;
+		}
+
+		return expression;
+	}
+
+	/**
+	 * Computes an operation if both sides are numbers. Adding 0, subtracting 0,
+	 * multiplying by 1 and dividing by 1 are removed.
+	 *
+	 * @param operation operation node
+	 * @param left      folded left side
+	 * @param right     folded right side
+	 * @return number node, one of the sides or operation on the folded sides
+	 */
+	private Node.Expression foldOperation(Node.BinOp operation, Node.Expression left, Node.Expression right) {
+		boolean leftNumber = left instanceof Node.IntLit;
+		boolean rightNumber = right instanceof Node.IntLit;
+		int a = leftNumber ? ((Node.IntLit) left).value : 0;
+		int b = rightNumber ? ((Node.IntLit) right).value : 0;
+		switch (operation.operator) {
+		case PLUS:
+			if (leftNumber && rightNumber)
+				return number(operation.line, a + b);
+			if (rightNumber && b == 0)
+				return left;
+			if (leftNumber && a == 0)
+				return right;
+			break;
+		case MINUS:
+			if (leftNumber && rightNumber)
+				return number(operation.line, a - b);
+			if (rightNumber && b == 0)
+				return left;
+			break;
+		case MULTIPLY:
+			if (leftNumber && rightNumber)
+				return number(operation.line, a * b);
+			if (rightNumber && b == 1)
+				return left;
+			if (leftNumber && a == 1)
+				return right;
+			break;
+		default:
+			// Divisions that fail at run time are left to fail at run time
+			if (leftNumber && rightNumber && b != 0 && !(a == Integer.MIN_VALUE && b == -1))
+				return number(operation.line, a / b);
+			if (rightNumber && b == 1)
+				return left;
+			break;
+		}
+		if (left == operation.left && right == operation.right)
+			return operation;
+		return new Node.BinOp(operation.line, operation.operator, left, right);
+	}
+
+	/**
+	 * @param line  line number of the folded node
+	 * @param value value of the number
+	 * @return number node
+	 */
+	private Node.IntLit number(int line, int value) {
+		return new Node.IntLit(line, Integer.toString(value), value);
+	}
+}
@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Removes assignments whose values are never read and finds the stores that
+ * no load can read. Assignments with a division that can trap are kept, the
+ * program must still stop there. Parser keeps the value of a variable that is loaded or
+ * stored in a block and does not load it again in the same block, so only the
+ * first read of a variable in a block is a load from memory. A store is needed
+ * only if a load can read it, and 0 is stored at the beginning only for the
+ * variables that can be loaded before they are assigned. Variables that are
+ * never loaded get no alloca.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class DeadStoreEliminator {
+
+	/**
+	 * Variables that each statement loads from memory, for if and while
+	 * statements the ones their conditions load
+	 */
+	private IdentityHashMap<Node.Statement, HashSet<String>> loads = new IdentityHashMap<Node.Statement, HashSet<String>>();
+	/**
+	 * Variables live at the condition of each while statement the last time it
+	 * was walked. A loop in the body of another loop is walked again each time
+	 * the outer loop is, and its search starts from these variables, so nested
+	 * loops do not take exponential time.
+	 */
+	private IdentityHashMap<Node.While, HashSet<String>> liveAtConditions = new IdentityHashMap<Node.While, HashSet<String>>();
+	/**
+	 * Expressions waiting to be searched for variables
+	 */
+	private ArrayList<Node.Expression> stack = new ArrayList<Node.Expression>();
+
+	/**
+	 * Removes dead assignments and marks dead stores of the whole program.
+	 *
+	 * @param program program to be optimized
+	 * @return program without dead assignments, with allocated and initialized
+	 *         variables
+	 */
+	public Node.Program eliminate(Node.Program program) {
+		// Remove assignments whose values are never read
+		ArrayList<Node.Statement> statements = removeDeadAssignments(program.statements, new HashSet<String>());
+
+		// Every variable is known to be 0 in the first block
+		findLoads(statements, new HashSet<String>(program.variables));
+		HashSet<String> loaded = new HashSet<String>();
+		for (HashSet<String> vars : loads.values())
+			loaded.addAll(vars);
+
+		// Variables that are loaded before they are stored need 0 at the beginning
+		liveAtConditions.clear();
+		HashSet<String> live = new HashSet<String>();
+		statements = markDeadStores(statements, live);
+
+		ArrayList<String> allocated = new ArrayList<String>();
+		ArrayList<String> initialized = new ArrayList<String>();
+		for (String var : program.variables) {
+			if (loaded.contains(var))
+				allocated.add(var);
+			if (live.contains(var))
+				initialized.add(var);
+		}
+		return new Node.Program(statements, program.variables, allocated, initialized);
+	}
+
+	/**
+	 * Removes assignments to variables that are not read before they are
+	 * assigned again or the program ends. Statements are walked backwards.
+	 *
+	 * @param statements statements of the program or of a curly bracket body
+	 * @param live       variables read after the statements, changed to the
+	 *                   variables read after the beginning of the statements
+	 * @return statements without dead assignments
+	 */
+	private ArrayList<Node.Statement> removeDeadAssignments(ArrayList<Node.Statement> statements,
+			HashSet<String> live) {
+		ArrayList<Node.Statement> kept = new ArrayList<Node.Statement>(statements.size());
+		for (int i = statements.size() - 1; i >= 0; i--) {
+			Node.Statement statement = statements.get(i);
+
+			// print function
+			if (statement instanceof Node.Print) {
+				addReads(((Node.Print) statement).value, live);
+				kept.add(statement);
+			}
+
+			// if statement, body may be skipped
+			else if (statement instanceof Node.If) {
+				Node.If ifStatement = (Node.If) statement;
+				HashSet<String> bodyLive = new HashSet<String>(live);
+				ArrayList<Node.Statement> body = removeDeadAssignments(ifStatement.body, bodyLive);
+				live.addAll(bodyLive);
+				addReads(ifStatement.condition, live);
+				kept.add(new Node.If(ifStatement.line, ifStatement.condition, body));
+			}
+
+			// while statement, variables read at the condition are found in a loop
+			else if (statement instanceof Node.While) {
+				Node.While whileStatement = (Node.While) statement;
+				HashSet<String> atCondition = liveAtCondition(whileStatement, live);
+				addReads(whileStatement.condition, atCondition);
+				ArrayList<Node.Statement> body;
+				int size;
+				do {
+					size = atCondition.size();
+					HashSet<String> bodyLive = new HashSet<String>(atCondition);
+					body = removeDeadAssignments(whileStatement.body, bodyLive);
+					atCondition.addAll(bodyLive);
+				} while (atCondition.size() != size);
+				// Body of the last walk is the one with the final variables
+				liveAtConditions.put(whileStatement, atCondition);
+				live.addAll(atCondition);
+				kept.add(new Node.While(whileStatement.line, whileStatement.condition, body));
+			}
+
+			// assignment, its value is computed only if it is read or can stop the
+			// program with a division by zero
+			else {
+				Node.Assign assignment = (Node.Assign) statement;
+				if (live.remove(assignment.name) || Node.canTrap(assignment.value)) {
+					addReads(assignment.value, live);
+					kept.add(assignment);
+				}
+			}
+		}
+		Collections.reverse(kept);
+		return kept;
+	}
+
+	/**
+	 * Finds the variables each statement loads from memory. A variable is loaded
+	 * if it is not assigned or read before in the same block. Bodies, while
+	 * conditions and statements after if and while statements are new blocks.
+	 *
+	 * @param statements statements of the program or of a curly bracket body
+	 * @param accessed   variables assigned or read in the current block, changed
+	 *                   to the ones at the end of the statements
+	 */
+	private void findLoads(ArrayList<Node.Statement> statements, HashSet<String> accessed) {
+		for (Node.Statement statement : statements) {
+			HashSet<String> reads = new HashSet<String>();
+
+			// print function
+			if (statement instanceof Node.Print) {
+				addReads(((Node.Print) statement).value, reads);
+				loads.put(statement, newLoads(reads, accessed));
+			}
+
+			// if statement, condition is in the current block
+			else if (statement instanceof Node.If) {
+				Node.If ifStatement = (Node.If) statement;
+				addReads(ifStatement.condition, reads);
+				loads.put(statement, newLoads(reads, accessed));
+				findLoads(ifStatement.body, new HashSet<String>());
+				accessed.clear();
+			}
+
+			// while statement, condition is in a new block
+			else if (statement instanceof Node.While) {
+				Node.While whileStatement = (Node.While) statement;
+				addReads(whileStatement.condition, reads);
+				loads.put(statement, reads);
+				findLoads(whileStatement.body, new HashSet<String>());
+				accessed.clear();
+			}
+
+			// assignment
+			else {
+				Node.Assign assignment = (Node.Assign) statement;
+				addReads(assignment.value, reads);
+				loads.put(statement, newLoads(reads, accessed));
+				accessed.add(assignment.name);
+			}
+		}
+	}
+
+	/**
+	 * @param reads    variables a statement reads
+	 * @param accessed variables assigned or read before in the block, reads are
+	 *                 added to it
+	 * @return variables that are read for the first time in the block
+	 */
+	private HashSet<String> newLoads(HashSet<String> reads, HashSet<String> accessed) {
+		HashSet<String> loaded = new HashSet<String>(reads);
+		loaded.removeAll(accessed);
+		accessed.addAll(reads);
+		return loaded;
+	}
+
+	/**
+	 * Marks assignments whose stored values are never loaded. Statements are
+	 * walked backwards.
+	 *
+	 * @param statements statements of the program or of a curly bracket body
+	 * @param live       variables loaded after the statements, changed to the
+	 *                   variables loaded after the beginning of the statements
+	 * @return statements with marked assignments
+	 */
+	private ArrayList<Node.Statement> markDeadStores(ArrayList<Node.Statement> statements, HashSet<String> live) {
+		ArrayList<Node.Statement> marked = new ArrayList<Node.Statement>(statements.size());
+		for (int i = statements.size() - 1; i >= 0; i--) {
+			Node.Statement statement = statements.get(i);
+
+			// if statement, body may be skipped
+			if (statement instanceof Node.If) {
+				Node.If ifStatement = (Node.If) statement;
+				HashSet<String> bodyLive = new HashSet<String>(live);
+				ArrayList<Node.Statement> body = markDeadStores(ifStatement.body, bodyLive);
+				live.addAll(bodyLive);
+				live.addAll(loads.get(statement));
+				marked.add(new Node.If(ifStatement.line, ifStatement.condition, body));
+			}
+
+			// while statement, variables loaded at the condition are found in a loop
+			else if (statement instanceof Node.While) {
+				Node.While whileStatement = (Node.While) statement;
+				HashSet<String> atCondition = liveAtCondition(whileStatement, live);
+				atCondition.addAll(loads.get(statement));
+				ArrayList<Node.Statement> body;
+				int size;
+				do {
+					size = atCondition.size();
+					HashSet<String> bodyLive = new HashSet<String>(atCondition);
+					body = markDeadStores(whileStatement.body, bodyLive);
+					atCondition.addAll(bodyLive);
+				} while (atCondition.size() != size);
+				liveAtConditions.put(whileStatement, atCondition);
+				live.addAll(atCondition);
+				marked.add(new Node.While(whileStatement.line, whileStatement.condition, body));
+			}
+
+			// assignment, value is loaded before it is stored
+			else if (statement instanceof Node.Assign) {
+				Node.Assign assignment = (Node.Assign) statement;
+				boolean stored = live.remove(assignment.name);
+				live.addAll(loads.get(statement));
+				marked.add(stored == assignment.stored ? assignment
+						: new Node.Assign(assignment.line, assignment.name, assignment.value, stored));
+			}
+
+			// print function
+			else {
+				live.addAll(loads.get(statement));
+				marked.add(statement);
+			}
+		}
+		Collections.reverse(marked);
+		return marked;
+	}
+
+	/**
+	 * Starts the search of the variables live at the condition of a while
+	 * statement. Variables only become live as an outer loop is walked again, so
+	 * the ones found in the last walk are still live.
+	 *
+	 * @param whileStatement while statement
+	 * @param live           variables live after the loop
+	 * @return variables known to be live at the condition
+	 */
+	private HashSet<String> liveAtCondition(Node.While whileStatement, HashSet<String> live) {
+		HashSet<String> atCondition = new HashSet<String>(live);
+		HashSet<String> found = liveAtConditions.get(whileStatement);
+		if (found != null)
+			atCondition.addAll(found);
+		return atCondition;
+	}
+
+	/**
+	 * Adds the variables an expression reads to a set.
+	 *
+	 * @param expression expression to be searched
+	 * @param reads      set to add the variables to
+	 */
+	private void addReads(Node.Expression expression, HashSet<String> reads) {
+		// Searched with a stack, long expressions are deeply nested
+		int base = stack.size();
+		stack.add(expression);
+		while (stack.size() > base) {
+			Node.Expression next = stack.remove(stack.size() - 1);
+			if (next instanceof Node.Var) {
+				reads.add(((Node.Var) next).name);
+			} else if (next instanceof Node.BinOp) {
+				stack.add(((Node.BinOp) next).left);
+				stack.add(((Node.BinOp) next).right);
+			} else if (next instanceof Node.Choose) {
+				Node.Choose function = (Node.Choose) next;
+				stack.add(function.selector);
+				stack.add(function.zero);
+				stack.add(function.positive);
+				stack.add(function.negative);
+			}
+		}
+	}
+}
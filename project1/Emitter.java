@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Collects LLVM code in a growable byte buffer. Numbers of temporary variables
+ * and labels are written without creating strings. The buffer is written to
+ * the output once, after the whole program is produced, and can be reused for
+ * the next file. An emitter of a part that is produced in parallel records
+ * where the numbers of temporary variables and labels are, so they can be
+ * changed when the parts are stitched.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class Emitter {
+
+	/**
+	 * Kind of the number of a temporary variable
+	 */
+	public static final int TEMP = 0;
+	/**
+	 * Kind of the number of an if label
+	 */
+	public static final int IF_LABEL = 1;
+	/**
+	 * Kind of the number of a while label
+	 */
+	public static final int WHILE_LABEL = 2;
+	/**
+	 * Kind of the number of a profile counter
+	 */
+	public static final int PROFILE_COUNTER = 3;
+
+	/**
+	 * Bytes of the LLVM code
+	 */
+	private byte[] buffer = new byte[1 << 16];
+	/**
+	 * Number of bytes in the buffer
+	 */
+	private int size = 0;
+	/**
+	 * Position and kind of every number of a temporary variable, a label or a
+	 * profile counter, null if they are not recorded
+	 */
+	private int[] counters = null;
+	/**
+	 * Number of ints used in counters
+	 */
+	private int counterSize = 0;
+
+	/**
+	 * Drops the contents of the buffer. Buffer is kept to be reused.
+	 */
+	public void reset() {
+		size = 0;
+		counterSize = 0;
+	}
+
+	/**
+	 * Records the positions of the numbers of temporary variables and labels
+	 * that are appended after this call. Positions are not moved by insert, so
+	 * the emitter of a part is only appended to.
+	 */
+	public void recordCounters() {
+		if (counters == null)
+			counters = new int[64];
+	}
+
+	/**
+	 * @return number of bytes in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Appends a string, strings with characters outside ASCII are encoded as
+	 * UTF-8.
+	 *
+	 * @param text string to be appended
+	 * @return this emitter
+	 */
+	public Emitter append(String text) {
+		int length = text.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				// Undo the ASCII part and encode the whole string
+				size -= i;
+				return append(text.getBytes(StandardCharsets.UTF_8));
+			}
+			buffer[size++] = (byte) c;
+		}
+		return this;
+	}
+
+	/**
+	 * Appends bytes.
+	 *
+	 * @param bytes bytes to be appended
+	 * @return this emitter
+	 */
+	public Emitter append(byte[] bytes) {
+		return append(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Appends a range of bytes.
+	 *
+	 * @param bytes  array of the bytes
+	 * @param offset position of the first byte
+	 * @param length number of bytes
+	 * @return this emitter
+	 */
+	public Emitter append(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		size += length;
+		return this;
+	}
+
+	/**
+	 * Appends one ASCII character.
+	 *
+	 * @param c character to be appended
+	 * @return this emitter
+	 */
+	public Emitter append(char c) {
+		ensureCapacity(1);
+		buffer[size++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Appends a number in decimal.
+	 *
+	 * @param number number to be appended
+	 * @return this emitter
+	 */
+	public Emitter append(int number) {
+		ensureCapacity(11);
+		long value = number;
+		if (value < 0) {
+			buffer[size++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long limit = 10; limit <= value; limit *= 10)
+			digits++;
+		for (int i = size + digits - 1; i >= size; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		size += digits;
+		return this;
+	}
+
+	/**
+	 * Appends a temporary variable like "%t12".
+	 *
+	 * @param tempNo number of the temporary variable
+	 * @return this emitter
+	 */
+	public Emitter temp(int tempNo) {
+		return append('%').append('t').counter(TEMP, tempNo);
+	}
+
+	/**
+	 * Appends the number of a temporary variable or a label and records where it
+	 * is if counters are recorded.
+	 *
+	 * @param kind   TEMP, IF_LABEL, WHILE_LABEL or PROFILE_COUNTER
+	 * @param number number of the temporary variable or the label
+	 * @return this emitter
+	 */
+	public Emitter counter(int kind, int number) {
+		if (counters != null) {
+			if (counterSize == counters.length)
+				counters = Arrays.copyOf(counters, counterSize * 2);
+			counters[counterSize++] = size;
+			counters[counterSize++] = kind;
+		}
+		return append(number);
+	}
+
+	/**
+	 * Appends the contents of this emitter to another one, recorded numbers are
+	 * increased by the numbers that are used before the part.
+	 *
+	 * @param to    emitter to append to
+	 * @param bases numbers of temporary variables, if labels, while labels and
+	 *              profile counters used before the part
+	 */
+	public void renumber(Emitter to, int[] bases) {
+		int from = 0;
+		for (int i = 0; i < counterSize; i += 2) {
+			int position = counters[i];
+			to.append(buffer, from, position - from);
+			int number = 0;
+			while (position < size && buffer[position] >= '0' && buffer[position] <= '9')
+				number = number * 10 + buffer[position++] - '0';
+			to.append(number + bases[counters[i + 1]]);
+			from = position;
+		}
+		to.append(buffer, from, size - from);
+	}
+
+	/**
+	 * Inserts the contents of another emitter, the bytes after the position are
+	 * moved.
+	 *
+	 * @param position position to insert at
+	 * @param text     emitter whose contents are inserted
+	 * @return this emitter
+	 */
+	public Emitter insert(int position, Emitter text) {
+		ensureCapacity(text.size);
+		System.arraycopy(buffer, position, buffer, position + text.size, size - position);
+		System.arraycopy(text.buffer, 0, buffer, position, text.size);
+		size += text.size;
+		return this;
+	}
+
+	/**
+	 * Ends the line.
+	 *
+	 * @return this emitter
+	 */
+	public Emitter newLine() {
+		return append('\n');
+	}
+
+	/**
+	 * Counts the lines of function bodies that are not labels, used by
+	 * "--stats".
+	 *
+	 * @return number of LLVM instructions in the buffer
+	 */
+	public int countInstructions() {
+		int count = 0;
+		boolean inFunction = false;
+		int lineStart = 0;
+		for (int i = 0; i < size; i++) {
+			if (buffer[i] != '\n')
+				continue;
+			if (buffer[lineStart] == 'd' && !inFunction)
+				inFunction = buffer[i - 1] == '{';
+			else if (buffer[lineStart] == '}' && i - lineStart == 1)
+				inFunction = false;
+			else if (inFunction && buffer[i - 1] != ':')
+				count++;
+			lineStart = i + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the buffer to the file with one channel write.
+	 *
+	 * @param outputPath path of the output file
+	 * @throws IOException
+	 */
+	public void writeTo(String outputPath) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(outputPath), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, size);
+			while (bytes.hasRemaining())
+				channel.write(bytes);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the buffer to a stream, used for standard output.
+	 *
+	 * @param stream stream to write to
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream stream) throws IOException {
+		stream.write(buffer, 0, size);
+		stream.flush();
+	}
+
+	/**
+	 * Grows the buffer if there is not enough space.
+	 *
+	 * @param length number of bytes that will be appended
+	 */
+	private void ensureCapacity(int length) {
+		if (size + length > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+	}
+}
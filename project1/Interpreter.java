@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Runs Bytecode without LLVM. Numbers are 32-bit and wrap around like i32,
+ * division rounds to 0 like sdiv and a division by 0 or -2147483648 / -1 stops
+ * the program like the trap of sdiv. Printed numbers are collected in a buffer
+ * that is written when it is full and when the program ends, the loop does not
+ * create objects.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class Interpreter {
+
+	/**
+	 * Buffered output is written when it is larger than this
+	 */
+	private static final int FLUSH_SIZE = 1 << 16;
+
+	/**
+	 * Collects printed numbers
+	 */
+	private Emitter out;
+	/**
+	 * Where the output is written
+	 */
+	private OutputStream stream;
+	/**
+	 * Number of instructions run by the last call to run
+	 */
+	private long instructions;
+
+	/**
+	 * Constructor of the Interpreter class.
+	 *
+	 * @param out    buffer for printed numbers, it is reset
+	 * @param stream where the output is written
+	 */
+	public Interpreter(Emitter out, OutputStream stream) {
+		this.out = out;
+		this.stream = stream;
+		out.reset();
+	}
+
+	/**
+	 * Runs the program until it ends or the fuel runs out. Output is written
+	 * before this returns or throws.
+	 *
+	 * @param program bytecode of the program
+	 * @param fuel    largest number of instructions to run
+	 * @return true if the program ended, false if the fuel ran out
+	 * @throws IOException
+	 * @throws ArithmeticException if there is a division by 0 or overflow
+	 */
+	public boolean run(Bytecode program, long fuel) throws IOException {
+		int[] code = program.code;
+		int[] vars = new int[program.slots];
+		int[] stack = new int[program.stackSize + 1];
+		int pc = 0;
+		int sp = 0;
+		long remaining = fuel;
+		try {
+			while (true) {
+				if (--remaining < 0) {
+					remaining = 0;
+					return false;
+				}
+				switch (code[pc++]) {
+				case Bytecode.CONST:
+					stack[sp++] = code[pc++];
+					break;
+				case Bytecode.LOAD:
+					stack[sp++] = vars[code[pc++]];
+					break;
+				case Bytecode.STORE:
+					vars[code[pc++]] = stack[--sp];
+					break;
+				case Bytecode.ADD:
+					sp--;
+					stack[sp - 1] += stack[sp];
+					break;
+				case Bytecode.SUB:
+					sp--;
+					stack[sp - 1] -= stack[sp];
+					break;
+				case Bytecode.MUL:
+					sp--;
+					stack[sp - 1] *= stack[sp];
+					break;
+				case Bytecode.DIV:
+					sp--;
+					if (stack[sp] == 0)
+						throw new ArithmeticException("division by zero");
+					if (stack[sp] == -1 && stack[sp - 1] == Integer.MIN_VALUE)
+						throw new ArithmeticException("division overflow");
+					stack[sp - 1] /= stack[sp];
+					break;
+				case Bytecode.CHOOSE:
+					sp -= 3;
+					int selector = stack[sp - 1];
+					stack[sp - 1] = selector == 0 ? stack[sp] : selector > 0 ? stack[sp + 1] : stack[sp + 2];
+					break;
+				case Bytecode.PRINT:
+					out.append(stack[--sp]).newLine();
+					if (out.size() > FLUSH_SIZE)
+						flush();
+					break;
+				case Bytecode.JUMP:
+					pc = code[pc];
+					break;
+				case Bytecode.JUMP_IF_ZERO:
+					pc = stack[--sp] == 0 ? code[pc] : pc + 1;
+					break;
+				default:
+					return true;
+				}
+			}
+		} finally {
+			instructions = fuel - remaining;
+			flush();
+		}
+	}
+
+	/**
+	 * @return number of instructions run by the last call to run
+	 */
+	public long getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Writes the buffered output.
+	 *
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		out.writeTo(stream);
+		out.reset();
+	}
+}
@@ -0,0 +1,530 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiles the syntax tree to a JVM class with one static method and loads it
+ * as a hidden class, so HotSpot compiles hot loops to machine code. Variables
+ * are local variables of the method, if and while statements are jumps and
+ * choose functions are branches after all four arguments are computed.
+ * Printed numbers go to an Emitter like in the Interpreter. The class file has
+ * version 49 so that it does not need stack map frames. A method can not have
+ * more than 64 KB of code and jumps have 16-bit offsets, programs that need
+ * more than MAX_CODE bytes are not compiled.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class JitCompiler {
+
+	/**
+	 * Largest method this compiler writes, every jump offset fits in 16 bits
+	 */
+	public static final int MAX_CODE = 32767;
+	/**
+	 * Buffered output is written when it is larger than this
+	 */
+	private static final int FLUSH_SIZE = 1 << 16;
+	/**
+	 * Name of the generated class
+	 */
+	private static final String CLASS_NAME = "MylangProgram";
+	/**
+	 * Descriptor of the generated method, it takes the output buffer and stream
+	 */
+	private static final String RUN_DESCRIPTOR = "(LEmitter;Ljava/io/OutputStream;)V";
+
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ISTORE = 0x36;
+	private static final int POP = 0x57;
+	private static final int DUP = 0x59;
+	private static final int IADD = 0x60;
+	private static final int ISUB = 0x64;
+	private static final int IMUL = 0x68;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IFGT = 0x9d;
+	private static final int GOTO = 0xa7;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int WIDE = 0xc4;
+
+	/**
+	 * Bytecode of the method
+	 */
+	private byte[] code = new byte[1024];
+	/**
+	 * Number of bytes in code
+	 */
+	private int size = 0;
+	/**
+	 * Constant pool entries after the first one
+	 */
+	private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	/**
+	 * Indexes of the constant pool entries
+	 */
+	private HashMap<String, Integer> constants = new HashMap<String, Integer>();
+	/**
+	 * Number of constant pool entries, including the unused first one
+	 */
+	private int poolCount = 1;
+	/**
+	 * Local variable of each mylang variable
+	 */
+	private HashMap<String, Integer> locals = new HashMap<String, Integer>();
+	/**
+	 * First of the three local variables that keep choose arguments
+	 */
+	private int chooseLocal;
+	/**
+	 * Number of values on the operand stack at the current instruction
+	 */
+	private int depth = 0;
+	/**
+	 * Largest number of values on the operand stack
+	 */
+	private int maxDepth = 0;
+	/**
+	 * Operations on the left side of an expression that are waiting for their
+	 * right side
+	 */
+	private Node.Spine spine = new Node.Spine();
+
+	/**
+	 * Compiles the whole program and loads its class.
+	 *
+	 * @param program program to be compiled
+	 * @return handle of the method taking the output buffer and stream, null if
+	 *         the program is too long for one method
+	 * @throws IllegalAccessException if the class can not be loaded
+	 */
+	public MethodHandle compile(Node.Program program) throws IllegalAccessException {
+		// Locals 0 and 1 are the output buffer and stream, then variables start at 0
+		for (String var : program.variables) {
+			locals.put(var, locals.size() + 2);
+			emit(ICONST_0);
+			push();
+			local(ISTORE, locals.size() + 1);
+			depth--;
+			if (size > MAX_CODE)
+				return null;
+		}
+		chooseLocal = locals.size() + 2;
+		if (!compileStatements(program.statements))
+			return null;
+		emit(RETURN);
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile(), true);
+		try {
+			return lookup.findStatic(lookup.lookupClass(), "run",
+					MethodType.methodType(void.class, Emitter.class, OutputStream.class));
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Called by the generated code to print a number.
+	 *
+	 * @param out    buffer for printed numbers
+	 * @param stream where the output is written when the buffer is full
+	 * @param value  number to be printed
+	 * @throws IOException
+	 */
+	public static void print(Emitter out, OutputStream stream, int value) throws IOException {
+		out.append(value).newLine();
+		if (out.size() > FLUSH_SIZE) {
+			out.writeTo(stream);
+			out.reset();
+		}
+	}
+
+	/**
+	 * Called by the generated code to divide like sdiv, idiv does not stop at
+	 * -2147483648 / -1.
+	 *
+	 * @param left  dividend
+	 * @param right divisor
+	 * @return quotient rounded to 0
+	 * @throws ArithmeticException if there is a division by 0 or overflow
+	 */
+	public static int divide(int left, int right) {
+		if (right == 0)
+			throw new ArithmeticException("division by zero");
+		if (right == -1 && left == Integer.MIN_VALUE)
+			throw new ArithmeticException("division overflow");
+		return left / right;
+	}
+
+	/**
+	 * Compiles statements in order.
+	 *
+	 * @param statements statements of the program or of a curly bracket body
+	 * @return false if the code is too long
+	 */
+	private boolean compileStatements(ArrayList<Node.Statement> statements) {
+		for (Node.Statement statement : statements) {
+
+			// print function, buffer and stream are pushed before the value
+			if (statement instanceof Node.Print) {
+				emit(ALOAD_0);
+				push();
+				emit(ALOAD_1);
+				push();
+				compileExpression(((Node.Print) statement).value);
+				invoke("print", "(LEmitter;Ljava/io/OutputStream;I)V");
+				depth -= 3;
+			}
+
+			// if statement, jump over the body if condition is 0
+			else if (statement instanceof Node.If) {
+				Node.If ifStatement = (Node.If) statement;
+				compileExpression(ifStatement.condition);
+				int jump = emit(IFEQ, 0);
+				depth--;
+				if (!compileStatements(ifStatement.body))
+					return false;
+				patch(jump, size);
+			}
+
+			// while statement, jump back to the condition after the body
+			else if (statement instanceof Node.While) {
+				Node.While whileStatement = (Node.While) statement;
+				int condition = size;
+				compileExpression(whileStatement.condition);
+				int jump = emit(IFEQ, 0);
+				depth--;
+				if (!compileStatements(whileStatement.body))
+					return false;
+				patch(emit(GOTO, 0), condition);
+				patch(jump, size);
+			}
+
+			// assignment
+			else {
+				Node.Assign assignment = (Node.Assign) statement;
+				compileExpression(assignment.value);
+				local(ISTORE, locals.get(assignment.name));
+				depth--;
+			}
+
+			if (size > MAX_CODE)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles an expression, its value is pushed to the stack.
+	 *
+	 * @param expression expression to be compiled
+	 */
+	private void compileExpression(Node.Expression expression) {
+		if (expression instanceof Node.IntLit) {
+			constant(((Node.IntLit) expression).value);
+			push();
+		} else if (expression instanceof Node.Var) {
+			local(ILOAD, locals.get(((Node.Var) expression).name));
+			push();
+		} else if (expression instanceof Node.Choose) {
+			Node.Choose function = (Node.Choose) expression;
+			compileExpression(function.selector);
+			compileExpression(function.zero);
+			compileExpression(function.positive);
+			compileExpression(function.negative);
+			// Arguments are kept in locals, selector stays on the stack
+			local(ISTORE, chooseLocal + 2);
+			local(ISTORE, chooseLocal + 1);
+			local(ISTORE, chooseLocal);
+			depth -= 3;
+			emit(DUP);
+			push();
+			int notZero = emit(IFNE, 0);
+			emit(POP);
+			local(ILOAD, chooseLocal);
+			int zeroEnd = emit(GOTO, 0);
+			patch(notZero, size);
+			int positive = emit(IFGT, 0);
+			local(ILOAD, chooseLocal + 2);
+			int negativeEnd = emit(GOTO, 0);
+			patch(positive, size);
+			local(ILOAD, chooseLocal + 1);
+			patch(zeroEnd, size);
+			patch(negativeEnd, size);
+			depth--;
+		} else {
+			// Operations on the left side are compiled in a loop, from the innermost one
+			int base = spine.size();
+			compileExpression(spine.descend(expression));
+			for (Node.BinOp operation = spine.next(base); operation != null; operation = spine.next(base)) {
+				compileExpression(operation.right);
+				switch (operation.operator) {
+				case PLUS:
+					emit(IADD);
+					break;
+				case MINUS:
+					emit(ISUB);
+					break;
+				case MULTIPLY:
+					emit(IMUL);
+					break;
+				default:
+					invoke("divide", "(II)I");
+				}
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Pushes a number with the shortest instruction.
+	 *
+	 * @param value number to be pushed
+	 */
+	private void constant(int value) {
+		if (value >= -1 && value <= 5) {
+			emit(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			emit(BIPUSH);
+			emit(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			emit(SIPUSH, value);
+		} else {
+			int index = integer(value);
+			if (index < 256) {
+				emit(LDC);
+				emit(index);
+			} else {
+				emit(LDC_W, index);
+			}
+		}
+	}
+
+	/**
+	 * Loads or stores a local variable, with the wide prefix if its index is
+	 * larger than 255.
+	 *
+	 * @param instruction ILOAD or ISTORE
+	 * @param index       index of the local variable
+	 */
+	private void local(int instruction, int index) {
+		if (index < 256) {
+			emit(instruction);
+			emit(index);
+		} else {
+			emit(WIDE);
+			emit(instruction, index);
+		}
+	}
+
+	/**
+	 * Calls a static method of this class.
+	 *
+	 * @param name       name of the method
+	 * @param descriptor descriptor of the method
+	 */
+	private void invoke(String name, String descriptor) {
+		emit(INVOKESTATIC, methodRef("JitCompiler", name, descriptor));
+	}
+
+	/**
+	 * Counts one more value on the stack.
+	 */
+	private void push() {
+		if (++depth > maxDepth)
+			maxDepth = depth;
+	}
+
+	/**
+	 * Sets the target of a jump.
+	 *
+	 * @param jump   position of the jump instruction
+	 * @param target position to jump to
+	 */
+	private void patch(int jump, int target) {
+		int offset = target - jump;
+		code[jump + 1] = (byte) (offset >> 8);
+		code[jump + 2] = (byte) offset;
+	}
+
+	/**
+	 * Appends one byte.
+	 *
+	 * @param value byte to be appended
+	 * @return position of the byte
+	 */
+	private int emit(int value) {
+		if (size == code.length)
+			code = Arrays.copyOf(code, size * 2);
+		code[size] = (byte) value;
+		return size++;
+	}
+
+	/**
+	 * Appends an instruction with a two byte operand.
+	 *
+	 * @param instruction instruction to be appended
+	 * @param operand     operand of the instruction
+	 * @return position of the instruction
+	 */
+	private int emit(int instruction, int operand) {
+		int position = emit(instruction);
+		emit(operand >> 8);
+		emit(operand);
+		return position;
+	}
+
+	/**
+	 * @return bytes of the class file with the compiled method
+	 */
+	private byte[] classFile() {
+		int thisClass = classRef(CLASS_NAME);
+		int superClass = classRef("java/lang/Object");
+		int runName = utf8("run");
+		int runDescriptor = utf8(RUN_DESCRIPTOR);
+		int codeName = utf8("Code");
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream(size + pool.size() + 64);
+		u4(file, 0xCAFEBABE);
+		u2(file, 0);
+		u2(file, 49);
+		u2(file, poolCount);
+		file.write(pool.toByteArray(), 0, pool.size());
+		u2(file, 0x0030); // final super
+		u2(file, thisClass);
+		u2(file, superClass);
+		u2(file, 0); // interfaces
+		u2(file, 0); // fields
+		u2(file, 1); // methods
+		u2(file, 0x0009); // public static
+		u2(file, runName);
+		u2(file, runDescriptor);
+		u2(file, 1); // Code attribute
+		u2(file, codeName);
+		u4(file, 12 + size);
+		u2(file, maxDepth);
+		u2(file, chooseLocal + 3);
+		u4(file, size);
+		file.write(code, 0, size);
+		u2(file, 0); // exception table
+		u2(file, 0); // attributes of code
+		u2(file, 0); // attributes of class
+		return file.toByteArray();
+	}
+
+	/**
+	 * @param text string constant
+	 * @return constant pool index of the string
+	 */
+	private int utf8(String text) {
+		Integer index = constants.get("U" + text);
+		if (index == null) {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			pool.write(1);
+			u2(pool, bytes.length);
+			pool.write(bytes, 0, bytes.length);
+			index = add("U" + text);
+		}
+		return index;
+	}
+
+	/**
+	 * @param value integer constant
+	 * @return constant pool index of the integer
+	 */
+	private int integer(int value) {
+		Integer index = constants.get("I" + value);
+		if (index == null) {
+			pool.write(3);
+			u4(pool, value);
+			index = add("I" + value);
+		}
+		return index;
+	}
+
+	/**
+	 * @param name internal name of the class
+	 * @return constant pool index of the class
+	 */
+	private int classRef(String name) {
+		Integer index = constants.get("C" + name);
+		if (index == null) {
+			int nameIndex = utf8(name);
+			pool.write(7);
+			u2(pool, nameIndex);
+			index = add("C" + name);
+		}
+		return index;
+	}
+
+	/**
+	 * @param owner      internal name of the class of the method
+	 * @param name       name of the method
+	 * @param descriptor descriptor of the method
+	 * @return constant pool index of the method
+	 */
+	private int methodRef(String owner, String name, String descriptor) {
+		String key = "M" + owner + "." + name + descriptor;
+		Integer index = constants.get(key);
+		if (index == null) {
+			int ownerIndex = classRef(owner);
+			int nameIndex = utf8(name);
+			int descriptorIndex = utf8(descriptor);
+			pool.write(12);
+			u2(pool, nameIndex);
+			u2(pool, descriptorIndex);
+			int nameAndType = add("T" + name + descriptor);
+			pool.write(10);
+			u2(pool, ownerIndex);
+			u2(pool, nameAndType);
+			index = add(key);
+		}
+		return index;
+	}
+
+	/**
+	 * @param key key of the constant that was written to the pool
+	 * @return index of the constant
+	 */
+	private int add(String key) {
+		constants.put(key, poolCount);
+		return poolCount++;
+	}
+
+	/**
+	 * Writes two bytes, high byte first.
+	 *
+	 * @param out   where the bytes are written
+	 * @param value value to be written
+	 */
+	private static void u2(ByteArrayOutputStream out, int value) {
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	/**
+	 * Writes four bytes, high byte first.
+	 *
+	 * @param out   where the bytes are written
+	 * @param value value to be written
+	 */
+	private static void u4(ByteArrayOutputStream out, int value) {
+		u2(out, value >>> 16);
+		u2(out, value);
+	}
+}
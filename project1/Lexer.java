@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Splits mylang input into tokens in a single pass over a byte buffer. Tokens
+ * and line numbers are the same as splitting every line read by
+ * java.util.Scanner with StringTokenizer on "+-/*()={}# \t," and dropping the
+ * white space tokens. Reading a token does not allocate, text of a token is
+ * only created when it is asked for.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class Lexer {
+
+	/**
+	 * Input bytes
+	 */
+	private final ByteBuffer input;
+	/**
+	 * Position of the next byte to read
+	 */
+	private int pos;
+	/**
+	 * End of the input
+	 */
+	private final int limit;
+	/**
+	 * Number of the line that is being read, starts from 0 like Parser.lineNo
+	 */
+	private int line = 0;
+	/**
+	 * Position where the current line starts
+	 */
+	private int lineStart;
+	/**
+	 * Type of the current token
+	 */
+	private TokenType type;
+	/**
+	 * Position of the first byte of the current token
+	 */
+	private int start;
+	/**
+	 * Position after the last byte of the current token
+	 */
+	private int end;
+	/**
+	 * Line number of the current token
+	 */
+	private int tokenLine;
+
+	/**
+	 * Constructor of the Lexer class, reads from the position to the limit of the
+	 * buffer.
+	 *
+	 * @param input mylang input
+	 */
+	public Lexer(ByteBuffer input) {
+		this.input = input;
+		this.pos = input.position();
+		this.limit = input.limit();
+		this.lineStart = pos;
+	}
+
+	/**
+	 * Reads the whole file into memory and creates a lexer on it.
+	 *
+	 * @param inputPath path of the input file
+	 * @return lexer that reads the file
+	 * @throws IOException
+	 */
+	public static Lexer open(String inputPath) throws IOException {
+		return new Lexer(read(inputPath));
+	}
+
+	/**
+	 * Reads the whole file into memory.
+	 *
+	 * @param inputPath path of the input file
+	 * @return contents of the file
+	 * @throws IOException
+	 */
+	public static ByteBuffer read(String inputPath) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(inputPath, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+				;
+			buffer.flip();
+			return buffer;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Maps the file into memory, so it is read by the operating system as it is
+	 * lexed and does not take heap space.
+	 *
+	 * @param inputPath path of the input file
+	 * @return contents of the file
+	 * @throws IOException if the file can not be read or is 2 GB or larger
+	 */
+	public static ByteBuffer map(String inputPath) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(inputPath + " is too large to be mapped");
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return false if there are no more tokens
+	 */
+	public boolean next() {
+		while (pos < limit) {
+			byte c = input.get(pos);
+			switch (c) {
+			case ' ':
+			case '\t':
+				pos++;
+				continue;
+			case '\n':
+			case '\r':
+				pos = newLine(pos);
+				continue;
+			case '+':
+				return symbol(TokenType.PLUS);
+			case '-':
+				return symbol(TokenType.MINUS);
+			case '*':
+				return symbol(TokenType.MULTIPLY);
+			case '/':
+				return symbol(TokenType.DIVIDE);
+			case '(':
+				return symbol(TokenType.LEFT_PARENTHESIS);
+			case ')':
+				return symbol(TokenType.RIGHT_PARENTHESIS);
+			case '{':
+				return symbol(TokenType.LEFT_CURLY_BRACKET);
+			case '}':
+				return symbol(TokenType.RIGHT_CURLY_BRACKET);
+			case '=':
+				return symbol(TokenType.ASSIGN);
+			case ',':
+				return symbol(TokenType.COMMA);
+			case '#':
+				return symbol(TokenType.COMMENT);
+			default:
+				if (lineBreakLength(pos) > 0) {
+					pos = newLine(pos);
+					continue;
+				}
+				int wordEnd = wordEnd(pos);
+				// White space words of one character are dropped like the other white space
+				if (wordEnd - pos == 1 && (c == '\f' || c == 0x0B)) {
+					pos = wordEnd;
+					continue;
+				}
+				start = pos;
+				end = wordEnd;
+				tokenLine = line;
+				type = classify(start, end);
+				pos = end;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return type of the current token
+	 */
+	public TokenType type() {
+		return type;
+	}
+
+	/**
+	 * @return line number of the current token
+	 */
+	public int line() {
+		return tokenLine;
+	}
+
+	/**
+	 * @return position of the first byte of the current token
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * @return length of the current token in bytes
+	 */
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * Creates the text of the current token. Symbols and keywords share one
+	 * string, other words are copied from the input.
+	 *
+	 * @return text of the current token
+	 */
+	public String text() {
+		if (type.getText() != null)
+			return type.getText();
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = input.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Number of lines java.util.Scanner would read from the input. Only final
+	 * after next() returns false.
+	 *
+	 * @return number of lines
+	 */
+	public int lineCount() {
+		return lineStart < limit ? line + 1 : line;
+	}
+
+	/**
+	 * Sets the current token to a one character symbol.
+	 *
+	 * @param symbol type of the symbol
+	 * @return true
+	 */
+	private boolean symbol(TokenType symbol) {
+		type = symbol;
+		start = pos;
+		end = ++pos;
+		tokenLine = line;
+		return true;
+	}
+
+	/**
+	 * Skips the line break at the position and starts a new line.
+	 *
+	 * @param at position of the line break
+	 * @return position after the line break
+	 */
+	private int newLine(int at) {
+		int length = lineBreakLength(at);
+		// "\r\n" is one line break
+		if (input.get(at) == '\r' && at + 1 < limit && input.get(at + 1) == '\n')
+			length = 2;
+		line++;
+		lineStart = at + length;
+		return lineStart;
+	}
+
+	/**
+	 * Line breaks are the ones java.util.Scanner recognizes: "\n", "\r" and UTF-8
+	 * encoded U+0085, U+2028 and U+2029.
+	 *
+	 * @param at position to check
+	 * @return length of the line break at the position, 0 if there is none
+	 */
+	private int lineBreakLength(int at) {
+		byte c = input.get(at);
+		if (c == '\n' || c == '\r')
+			return 1;
+		if (c == (byte) 0xC2 && at + 1 < limit && input.get(at + 1) == (byte) 0x85)
+			return 2;
+		if (c == (byte) 0xE2 && at + 2 < limit && input.get(at + 1) == (byte) 0x80
+				&& (input.get(at + 2) == (byte) 0xA8 || input.get(at + 2) == (byte) 0xA9))
+			return 3;
+		return 0;
+	}
+
+	/**
+	 * Finds where the word starting at the position ends.
+	 *
+	 * @param at position of the first byte of the word
+	 * @return position after the last byte of the word
+	 */
+	private int wordEnd(int at) {
+		while (at < limit) {
+			switch (input.get(at)) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+			case '+':
+			case '-':
+			case '*':
+			case '/':
+			case '(':
+			case ')':
+			case '{':
+			case '}':
+			case '=':
+			case ',':
+			case '#':
+				return at;
+			default:
+				if (lineBreakLength(at) > 0)
+					return at;
+				at++;
+			}
+		}
+		return at;
+	}
+
+	/**
+	 * Finds the type of a word. Words starting with a digit are numbers, words
+	 * with only letters, digits and underscores are keywords or identifiers.
+	 *
+	 * @param from position of the first byte
+	 * @param to   position after the last byte
+	 * @return type of the word
+	 */
+	private TokenType classify(int from, int to) {
+		byte first = input.get(from);
+		if (first >= '0' && first <= '9')
+			return TokenType.NUMBER;
+		if (!isAlphabetic(first))
+			return TokenType.INVALID;
+		for (int i = from + 1; i < to; i++) {
+			byte c = input.get(i);
+			if (!isAlphabetic(c) && !(c >= '0' && c <= '9'))
+				return TokenType.INVALID;
+		}
+		switch (to - from) {
+		case 2:
+			return matches(from, "if") ? TokenType.IF : TokenType.IDENTIFIER;
+		case 5:
+			return matches(from, "while") ? TokenType.WHILE
+					: matches(from, "print") ? TokenType.PRINT : TokenType.IDENTIFIER;
+		case 6:
+			return matches(from, "choose") ? TokenType.CHOOSE : TokenType.IDENTIFIER;
+		default:
+			return TokenType.IDENTIFIER;
+		}
+	}
+
+	/**
+	 * @param from    position of the first byte
+	 * @param keyword keyword to compare
+	 * @return true if the input has the keyword at the position
+	 */
+	private boolean matches(int from, String keyword) {
+		for (int i = 0; i < keyword.length(); i++) {
+			if (input.get(from + i) != keyword.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param c one byte
+	 * @return true if c is an English letter or underscore
+	 */
+	private boolean isAlphabetic(byte c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_';
+	}
+}
@@ -1,9 +1,9 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.StringTokenizer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author Atilla Türkmen
@@ -12,48 +12,490 @@ import java.util.StringTokenizer;
 public class Main {
 
 	/**
-	 * @param args One argument which is the path of input file
-	 * @throws UnsupportedEncodingException
-	 * @throws FileNotFoundException
+	 * Stack size of the threads that translate. Parenthesis, choose functions
+	 * and nested bodies are walked with recursion, AstBuilder limits their depth
+	 * to what fits in this stack.
 	 */
-	public static void main(String[] args) throws FileNotFoundException, UnsupportedEncodingException {
+	public static final long STACK_SIZE = 1L << 30;
+
+	/**
+	 * Output buffer of each thread, reused for every file the thread compiles
+	 */
+	private static final ThreadLocal<Emitter> EMITTERS = new ThreadLocal<Emitter>() {
+		protected Emitter initialValue() {
+			return new Emitter();
+		}
+	};
+
+	/**
+	 * @param args Path of the input file, optionally with "--stdout" to write the
+	 *             output to standard output, "--ssa" to keep variables in
+	 *             registers, "--nested" to allow nested if and while statements,
+	 *             "--buffered-print" to write printed numbers with one system
+	 *             call for many of them, "--profile" to count how many times
+	 *             each block runs, "--diagnostics" to write every syntax error,
+	 *             "--jobs N" to produce a long program on N threads, "--asm" to
+	 *             write x86-64 assembly to a ".s" file, "--native" to link it to
+	 *             an executable with gcc, "--cache dir" to keep outputs of
+	 *             unchanged inputs in a directory and "--stats" to write
+	 *             counters of the phases. Or "--stream" to translate a long
+	 *             input in parts. Or "--batch" with directories, glob patterns,
+	 *             list files (@list.txt) or input files. Or "--run" to run the
+	 *             input file, optionally with "--fuel N" to stop after N
+	 *             instructions. Or "--jit" to run it as a JVM class. Or
+	 *             "--profile-report counts" to print the hot lines of the input
+	 *             from the counts of a profiled run. Or "--daemon socket" to
+	 *             translate requests of clients, "--client socket" sends the
+	 *             input file to the daemon
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(
+					"usage: java -jar mylang2ir [--stdout] [--ssa] [--nested] [--buffered-print] [--profile] [--diagnostics] [--jobs N] [--cache dir] [--stats] input.my");
+			System.err.println("       java -jar mylang2ir --asm|--native [--stdout] [--nested] [--diagnostics] [--batch] inputs...");
+			System.err.println(
+					"       java -jar mylang2ir --batch [--ssa] [--nested] [--buffered-print] [--profile] [--diagnostics] [--jobs N] [--cache dir] [--cache-size MB] [--stats] inputs...");
+			System.err.println(
+					"       java -jar mylang2ir --stream [--stdout] [--ssa] [--nested] [--buffered-print] [--profile] [--diagnostics] [--batch] inputs...");
+			System.err.println("       java -jar mylang2ir --profile-report counts.txt input.my");
+			System.err.println("       java -jar mylang2ir --run [--nested] [--diagnostics] [--fuel N] input.my");
+			System.err.println("       java -jar mylang2ir --jit [--nested] [--diagnostics] input.my");
+			System.err.println("       java -jar mylang2ir --daemon socket|- [--jobs N] [--cache dir]");
+			System.err.println("       java -jar mylang2ir --client socket [--stdout] [--ssa] [--nested] [--buffered-print] [--profile] input.my");
+			System.exit(2);
+			return;
+		}
+
+		final Options parsed = options;
+		runOnDeepStack("main", new Callable<Void>() {
+			public Void call() throws IOException {
+				execute(parsed);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Does what the options ask for, on a thread with STACK_SIZE.
+	 *
+	 * @param options options of the command line
+	 * @throws IOException
+	 */
+	private static void execute(Options options) throws IOException {
+		// Outputs of unchanged inputs are read from the cache
+		if (options.cacheDir != null)
+			options.cache = new CompilationCache(options.cacheDir, options.cacheSize << 20);
+
+		// Keep the translator running and translate requests
+		if (options.daemon != null) {
+			new CompileDaemon(options).serve(options.daemon);
+			System.exit(0);
+		}
+
+		// Counters of every translated file are added to the total
+		if (options.stats)
+			options.statsTotal = new CompileStats();
+
+		// Compile many files in one JVM
+		if (options.batch) {
+			BatchCompiler batch = new BatchCompiler(options.inputs, options);
+			System.exit(batch.run() ? 0 : 1);
+		}
+
+		// Map the counts of a profiled run to the lines of the input
+		if (options.profileReport != null)
+			System.exit(ProfileReport.print(options.inputs.get(0), options.profileReport, System.out) ? 0 : 1);
+
+		// Run the program without LLVM
+		if (options.run)
+			System.exit(run(options.inputs.get(0), options));
+
+		try {
+			if (options.client != null)
+				CompileClient.compile(options.client, options.inputs.get(0), options);
+			else
+				compile(options.inputs.get(0), options);
+		} catch (SyntaxException e) {
+			// Error program is already written to the output
+		}
+		if (options.statsTotal != null)
+			System.err.println(options.statsTotal.toJson());
+	}
+
+	/**
+	 * Runs a task on a new thread with STACK_SIZE and waits for it. The
+	 * benchmarks run on it too, so they measure what the command line can
+	 * translate.
+	 *
+	 * @param name name of the thread
+	 * @param task work to be run
+	 * @throws Exception what the task throws
+	 */
+	public static void runOnDeepStack(String name, final Callable<Void> task) throws Exception {
+		final Throwable[] thrown = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					task.call();
+				} catch (Throwable e) {
+					thrown[0] = e;
+				}
+			}
+		}, name, STACK_SIZE);
+		thread.start();
+		thread.join();
+		if (thrown[0] instanceof Exception)
+			throw (Exception) thrown[0];
+		if (thrown[0] instanceof Error)
+			throw (Error) thrown[0];
+	}
+
+	/**
+	 * @param name name of the threads
+	 * @return factory of daemon threads with STACK_SIZE, for the pools that
+	 *         translate
+	 */
+	public static ThreadFactory deepStackThreads(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(null, task, name, STACK_SIZE);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Translates one mylang file to LLVM code with default options. Output file
+	 * has the same path with ".ll" extension.
+	 *
+	 * @param inputPath path of the input file
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the output
+	 *                         file
+	 */
+	public static void compile(String inputPath) throws IOException, SyntaxException {
+		compile(inputPath, new Options());
+	}
+
+	/**
+	 * Translates one mylang file to LLVM code. Output is written once, after the
+	 * whole program is produced. If the output of the same input is cached, it
+	 * is written without parsing.
+	 *
+	 * @param inputPath path of the input file
+	 * @param options   options of the output
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the output
+	 */
+	public static void compile(String inputPath, Options options) throws IOException, SyntaxException {
+		// Long inputs are translated in parts
+		if (options.stream) {
+			try {
+				new StreamCompiler(options).compile(inputPath);
+			} catch (SyntaxException e) {
+				if (options.diagnostics)
+					printDiagnostics(inputPath, e);
+				throw e;
+			}
+			return;
+		}
 
 		// Path to input and output files
-		String inputPath = args[0];
-		String outputPath = inputPath.substring(0, inputPath.length() - 3) + ".ll";
+		String outputPath = inputPath.substring(0, inputPath.length() - 3) + (options.asm ? ".s" : ".ll");
 
-		// Read mylang input
-		Scanner input = new Scanner(new File(inputPath));
+		CompileStats stats = null;
+		if (options.statsTotal != null) {
+			stats = new CompileStats();
+			stats.start();
+		}
+		ByteBuffer input = Lexer.read(inputPath);
+		if (stats != null)
+			stats.phase(CompileStats.READ);
 
-		// Tokenize line by line
-		ArrayList<ArrayList<String>> lines = new ArrayList<ArrayList<String>>();
+		Emitter out = EMITTERS.get();
+		SyntaxException error = null;
+		try {
+			translate(input, options, out, stats);
+		} catch (SyntaxException e) {
+			error = e;
+		}
+		write(out, outputPath, options);
+		if (stats != null) {
+			stats.phase(CompileStats.WRITE);
+			options.statsTotal.add(stats);
+		}
+		if (options.nativeExe)
+			link(outputPath, inputPath.substring(0, inputPath.length() - 3));
+		if (error != null && options.diagnostics)
+			printDiagnostics(inputPath, error);
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Translates a mylang program in memory. If the output of the same input is
+	 * cached, it is used without parsing.
+	 *
+	 * @param input   contents of the input file
+	 * @param options options of the output
+	 * @param out     buffer for the LLVM code, it is reset
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the buffer
+	 */
+	public static void translate(ByteBuffer input, Options options, Emitter out) throws IOException, SyntaxException {
+		translate(input, options, out, null);
+	}
 
-		while (input.hasNextLine()) {
+	/**
+	 * Translates a mylang program in memory and records its phases. The
+	 * benchmarks call it to time the phases.
+	 *
+	 * @param input   contents of the input file
+	 * @param options options of the output
+	 * @param out     buffer for the LLVM code, it is reset
+	 * @param stats   counters of the file, null if they are not recorded
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the buffer
+	 */
+	static void translate(ByteBuffer input, Options options, Emitter out, CompileStats stats)
+			throws IOException, SyntaxException {
+		String key = null;
+		if (options.cache != null) {
+			key = options.cache.key(input, options);
+			byte[] cached = options.cache.get(key);
+			if (stats != null)
+				stats.phase(CompileStats.CACHE);
+			if (cached != null) {
+				out.reset();
+				out.append(cached);
+				if (stats != null)
+					stats.countCacheHit();
+				return;
+			}
+		}
 
-			// Tokenize symbols
-			StringTokenizer st = new StringTokenizer(input.nextLine(), "+-/*()={}# 	,", true);
+		// Build the syntax tree, print the error program if there is a syntax error
+		Lexer lexer = new Lexer(input);
+		if (options.asm) {
+			translateToAsm(lexer, options, out);
+			if (key != null)
+				options.cache.put(key, out);
+			return;
+		}
+		Parser parser = new Parser(out, options.ssa);
+		if (options.bufferedPrint)
+			parser.bufferPrints();
+		if (options.profile)
+			parser.profile();
+		try {
+			Node.Program program = buildProgram(lexer, options, stats);
 
-			// Remove white line
-			ArrayList<String> tokens = new ArrayList<String>();
-			while (st.hasMoreTokens()) {
-				String next = st.nextToken();
-				if (next.matches("\\s|\\t"))
-					continue;
-				tokens.add(next);
+			// Produce output with parser
+			parser.printStartingLines();
+			parser.initializeVars(program);
+			if (stats != null)
+				stats.phase(CompileStats.INITIALIZE_VARS);
+			ParallelGenerator.produceOutput(parser, out, program.statements, options);
+			parser.printEndingLines();
+			if (stats != null) {
+				stats.phase(CompileStats.CODEGEN);
+				stats.countOutput(parser, out);
+			}
+		} catch (SyntaxException e) {
+			parser.syntaxError(e.getLineNo());
+			if (stats != null) {
+				stats.phase(CompileStats.PARSE);
+				stats.countSyntaxError();
 			}
+			throw e;
+		}
+		if (key != null)
+			options.cache.put(key, out);
+	}
 
-			// Add to lines list
-			lines.add(tokens);
+	/**
+	 * Translates a mylang program to x86-64 assembly.
+	 *
+	 * @param lexer   lexer of the input
+	 * @param options whether bodies can be nested
+	 * @param out     buffer for the assembly, it is reset
+	 * @throws SyntaxException after the error program is written to the buffer
+	 */
+	private static void translateToAsm(Lexer lexer, Options options, Emitter out) throws SyntaxException {
+		AsmGenerator generator = new AsmGenerator(out);
+		try {
+			generator.generate(buildProgram(lexer, options, null));
+		} catch (SyntaxException e) {
+			generator.syntaxError(e.getLineNo());
+			throw e;
 		}
+	}
 
-		input.close();
+	/**
+	 * Assembles and links the assembly to an executable with gcc.
+	 *
+	 * @param asmPath path of the assembly file
+	 * @param exePath path of the executable
+	 * @throws IOException if gcc can not be started or fails
+	 */
+	private static void link(String asmPath, String exePath) throws IOException {
+		Process gcc = new ProcessBuilder("gcc", "-o", exePath, asmPath).inheritIO().start();
+		int exitCode;
+		try {
+			exitCode = gcc.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while linking " + asmPath);
+		}
+		if (exitCode != 0)
+			throw new IOException("gcc failed to link " + asmPath + " with exit code " + exitCode);
+	}
 
-		// Produce output with parser
-		Parser parser = new Parser(outputPath);
-		parser.printStartingLines();
-		parser.initializeVars(lines);
-		parser.produceOutput(lines);
-		parser.printEndingLines();
+	/**
+	 * Writes the LLVM code to the output file or to standard output.
+	 *
+	 * @param out        LLVM code
+	 * @param outputPath path of the output file
+	 * @param options    options of the output
+	 * @throws IOException
+	 */
+	private static void write(Emitter out, String outputPath, Options options) throws IOException {
+		if (options.toStdout)
+			out.writeTo(System.out);
+		else
+			out.writeTo(outputPath);
+	}
+
+	/**
+	 * Writes every syntax error of a file to standard error like
+	 * "input.my:3: division by 0" and their number. The lines are written with
+	 * one call, so lines of files translated in parallel are not mixed.
+	 *
+	 * @param inputPath path of the input file
+	 * @param error     first syntax error with all of them
+	 */
+	private static void printDiagnostics(String inputPath, SyntaxException error) {
+		StringBuilder lines = new StringBuilder();
+		for (SyntaxException diagnostic : error.getDiagnostics()) {
+			lines.append(inputPath).append(':').append(diagnostic.getLineNo()).append(": ")
+					.append(diagnostic.getReason()).append('\n');
+		}
+		int count = error.getDiagnostics().size();
+		lines.append(inputPath).append(": ").append(count).append(count == 1 ? " syntax error" : " syntax errors")
+				.append('\n');
+		System.err.print(lines);
+		System.err.flush();
+	}
+
+	/**
+	 * Runs one mylang file with the interpreter or as a JVM class. Programs that
+	 * are too long for one JVM method are run with the interpreter. Output is
+	 * written to standard output like the output of the LLVM code.
+	 *
+	 * @param inputPath path of the input file
+	 * @param options   fuel of the interpreter and whether to use the JVM class
+	 * @return exit code, 0 if the program ended, 1 if it divided by 0 and 3 if
+	 *         the fuel ran out
+	 * @throws IOException
+	 */
+	public static int run(String inputPath, Options options) throws IOException {
+		Emitter out = EMITTERS.get();
+		Interpreter interpreter = new Interpreter(out, System.out);
+		Node.Program program;
+		try {
+			program = buildProgram(Lexer.open(inputPath), options, null);
+		} catch (SyntaxException e) {
+			out.append("Line ").append(e.getLineNo()).append(": syntax error").newLine();
+			out.writeTo(System.out);
+			if (options.diagnostics)
+				printDiagnostics(inputPath, e);
+			return 0;
+		}
+
+		try {
+			if (options.jit && runCompiled(program, out))
+				return 0;
+			Bytecode bytecode = new BytecodeCompiler().compile(program);
+			if (interpreter.run(bytecode, options.fuel))
+				return 0;
+			System.err.println("stopped after " + options.fuel + " instructions");
+			return 3;
+		} catch (ArithmeticException e) {
+			System.err.println(e.getMessage());
+			return 1;
+		} finally {
+			System.out.flush();
+		}
+	}
+
+	/**
+	 * Runs the program as a hidden JVM class.
+	 *
+	 * @param program program to be run
+	 * @param out     buffer for printed numbers, written when the program ends
+	 * @return false if the program is too long to be compiled
+	 * @throws IOException
+	 * @throws ArithmeticException if there is a division by 0 or overflow
+	 */
+	private static boolean runCompiled(Node.Program program, Emitter out) throws IOException {
+		MethodHandle method;
+		try {
+			method = new JitCompiler().compile(program);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		if (method == null)
+			return false;
+		try {
+			method.invokeExact(out, (OutputStream) System.out);
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		} finally {
+			out.writeTo(System.out);
+			out.reset();
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the syntax tree and optimizes it. The benchmarks call it to get the
+	 * trees whose code generation they time.
+	 *
+	 * @param lexer   lexer of the input file
+	 * @param options whether bodies can be nested
+	 * @param stats   counters of the file, null if they are not recorded
+	 * @return optimized program
+	 * @throws SyntaxException if the input has a syntax error
+	 */
+	static Node.Program buildProgram(Lexer lexer, Options options, CompileStats stats)
+			throws SyntaxException {
+		AstBuilder builder = new AstBuilder(lexer, options.nested);
+		if (options.diagnostics)
+			builder.collectDiagnostics();
+		if (stats != null)
+			stats.countInput(builder);
+		Node.Program program = builder.parseProgram();
+		if (stats != null)
+			stats.phase(CompileStats.PARSE);
+		// Compute what is known at compile time
+		program = new ConstantFolder().fold(program);
+		if (stats != null)
+			stats.phase(CompileStats.FOLD);
+		// Remove assignments and stores that are never read
+		program = new DeadStoreEliminator().eliminate(program);
+		if (stats != null) {
+			stats.phase(CompileStats.DEAD_STORES);
+			stats.countProgram(program);
+		}
+		return program;
 	}
 
 }
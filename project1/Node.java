@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Nodes of the abstract syntax tree that AstBuilder builds and Parser walks.
+ * Every node keeps the line it starts at.
+ *
+ * @author Atilla Türkmen
+ */
+
+public abstract class Node {
+
+	/**
+	 * Line number of the node, starts from 0 like syntax error messages
+	 */
+	public final int line;
+
+	/**
+	 * Constructor of the Node class.
+	 *
+	 * @param line line number of the node
+	 */
+	protected Node(int line) {
+		this.line = line;
+	}
+
+	/**
+	 * Searches an expression for a division that can stop the program, every
+	 * operation and every argument of the choose functions in it is computed.
+	 *
+	 * @param expression expression to be searched
+	 * @return true if a division in the expression can trap
+	 */
+	public static boolean canTrap(Expression expression) {
+		// Searched with a stack, long expressions are deeply nested
+		ArrayList<Expression> stack = new ArrayList<Expression>();
+		stack.add(expression);
+		while (!stack.isEmpty()) {
+			Expression next = stack.remove(stack.size() - 1);
+			if (next instanceof BinOp) {
+				BinOp operation = (BinOp) next;
+				if (!operation.cannotTrap())
+					return true;
+				stack.add(operation.left);
+				stack.add(operation.right);
+			} else if (next instanceof Choose) {
+				Choose function = (Choose) next;
+				stack.add(function.selector);
+				stack.add(function.zero);
+				stack.add(function.positive);
+				stack.add(function.negative);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stack of the operations on the left side of expressions. Long expressions
+	 * are nested on the left, so they are walked in a loop instead of with
+	 * recursion: descend pushes the operations down the left side and returns
+	 * the innermost operand, then next gives the operations from the innermost
+	 * one. Right sides can be walked with the same stack in between, every walk
+	 * only pops above the size it started with.
+	 */
+	public static class Spine {
+
+		/**
+		 * Operations that are waiting for their right side
+		 */
+		private ArrayList<BinOp> operations = new ArrayList<BinOp>();
+
+		/**
+		 * @return size of the stack, the base of a new walk
+		 */
+		public int size() {
+			return operations.size();
+		}
+
+		/**
+		 * Pushes the operations on the left side of an expression.
+		 *
+		 * @param expression expression to be walked
+		 * @return innermost operand on the left side
+		 */
+		public Expression descend(Expression expression) {
+			return descend(expression, null);
+		}
+
+		/**
+		 * Pushes the operations on the left side of an expression until an
+		 * expression that is a key of stop.
+		 *
+		 * @param expression expression to be walked
+		 * @param stop       expressions that are not walked into, null for none
+		 * @return innermost operand on the left side or an expression of stop
+		 */
+		public Expression descend(Expression expression, Map<Expression, ?> stop) {
+			while (expression instanceof BinOp && (stop == null || !stop.containsKey(expression))) {
+				operations.add((BinOp) expression);
+				expression = ((BinOp) expression).left;
+			}
+			return expression;
+		}
+
+		/**
+		 * @param base size of the stack when the walk began
+		 * @return innermost operation of the walk that is not given yet, null if
+		 *         there are none
+		 */
+		public BinOp next(int base) {
+			return operations.size() > base ? operations.remove(operations.size() - 1) : null;
+		}
+	}
+
+	/**
+	 * Statements are assignments, prints, if and while statements
+	 */
+	public abstract static class Statement extends Node {
+
+		protected Statement(int line) {
+			super(line);
+		}
+	}
+
+	/**
+	 * Expressions are operations, choose functions, variables and numbers
+	 */
+	public abstract static class Expression extends Node {
+
+		protected Expression(int line) {
+			super(line);
+		}
+	}
+
+	/**
+	 * Whole mylang input
+	 */
+	public static class Program extends Node {
+
+		/**
+		 * Statements outside curly brackets
+		 */
+		public final ArrayList<Statement> statements;
+		/**
+		 * Variable names in order of first appearance, comments excluded
+		 */
+		public final ArrayList<String> variables;
+		/**
+		 * Variables that are loaded from memory, other variables need no alloca
+		 */
+		public final ArrayList<String> allocated;
+		/**
+		 * Variables that can be loaded before they are assigned, they are stored 0
+		 * at the beginning
+		 */
+		public final ArrayList<String> initialized;
+
+		public Program(ArrayList<Statement> statements, ArrayList<String> variables) {
+			this(statements, variables, variables, variables);
+		}
+
+		public Program(ArrayList<Statement> statements, ArrayList<String> variables, ArrayList<String> allocated,
+				ArrayList<String> initialized) {
+			super(0);
+			this.statements = statements;
+			this.variables = variables;
+			this.allocated = allocated;
+			this.initialized = initialized;
+		}
+	}
+
+	/**
+	 * name = value, stored is false if no load reads the value from memory
+	 */
+	public static class Assign extends Statement {
+
+		public final String name;
+		public final Expression value;
+		public final boolean stored;
+
+		public Assign(int line, String name, Expression value) {
+			this(line, name, value, true);
+		}
+
+		public Assign(int line, String name, Expression value, boolean stored) {
+			super(line);
+			this.name = name;
+			this.value = value;
+			this.stored = stored;
+		}
+	}
+
+	/**
+	 * print(value)
+	 */
+	public static class Print extends Statement {
+
+		public final Expression value;
+
+		public Print(int line, Expression value) {
+			super(line);
+			this.value = value;
+		}
+	}
+
+	/**
+	 * if(condition){ body }
+	 */
+	public static class If extends Statement {
+
+		public final Expression condition;
+		public final ArrayList<Statement> body;
+
+		public If(int line, Expression condition, ArrayList<Statement> body) {
+			super(line);
+			this.condition = condition;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * while(condition){ body }
+	 */
+	public static class While extends Statement {
+
+		public final Expression condition;
+		public final ArrayList<Statement> body;
+
+		public While(int line, Expression condition, ArrayList<Statement> body) {
+			super(line);
+			this.condition = condition;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * left operator right, operator is PLUS, MINUS, MULTIPLY or DIVIDE
+	 */
+	public static class BinOp extends Expression {
+
+		public final TokenType operator;
+		public final Expression left;
+		public final Expression right;
+
+		public BinOp(int line, TokenType operator, Expression left, Expression right) {
+			super(line);
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		/**
+		 * @return false for a division unless it divides by a number other than 0
+		 *         and -1, the other divisions can stop the program with SIGFPE
+		 */
+		public boolean cannotTrap() {
+			if (operator != TokenType.DIVIDE)
+				return true;
+			if (!(right instanceof IntLit))
+				return false;
+			int divisor = ((IntLit) right).value;
+			return divisor != 0 && divisor != -1;
+		}
+	}
+
+	/**
+	 * choose(selector, zero, positive, negative)
+	 */
+	public static class Choose extends Expression {
+
+		public final Expression selector;
+		public final Expression zero;
+		public final Expression positive;
+		public final Expression negative;
+
+		public Choose(int line, Expression selector, Expression zero, Expression positive, Expression negative) {
+			super(line);
+			this.selector = selector;
+			this.zero = zero;
+			this.positive = positive;
+			this.negative = negative;
+		}
+	}
+
+	/**
+	 * Variable
+	 */
+	public static class Var extends Expression {
+
+		public final String name;
+
+		public Var(int line, String name) {
+			super(line);
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Number, text is kept as it is written so that output does not change
+	 */
+	public static class IntLit extends Expression {
+
+		public final String text;
+		public final int value;
+
+		public IntLit(int line, String text, int value) {
+			super(line);
+			this.text = text;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+
+/**
+ * Command line options of the translator. Options start with "--" and can be
+ * written before or after the input paths.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class Options {
+
+	/**
+	 * Compile every input in one JVM, inputs can be directories, glob patterns
+	 * and list files
+	 */
+	public boolean batch = false;
+	/**
+	 * Write the LLVM code to standard output instead of the ".ll" file
+	 */
+	public boolean toStdout = false;
+	/**
+	 * Keep variables in registers with phi instructions instead of alloca
+	 */
+	public boolean ssa = false;
+	/**
+	 * Allow if and while statements in the bodies of if and while statements
+	 */
+	public boolean nested = false;
+	/**
+	 * Write every syntax error with its reason to standard error instead of only
+	 * the first one to the output
+	 */
+	public boolean diagnostics = false;
+	/**
+	 * Translate a memory mapped input in parts, so the heap does not grow with
+	 * the input
+	 */
+	public boolean stream = false;
+	/**
+	 * Number of threads that produce the code of one long program
+	 */
+	public int jobs = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Run the program with the interpreter instead of writing LLVM code
+	 */
+	public boolean run = false;
+	/**
+	 * Largest number of instructions the interpreter runs
+	 */
+	public long fuel = Long.MAX_VALUE;
+	/**
+	 * Run the program as a JVM class instead of with the interpreter
+	 */
+	public boolean jit = false;
+	/**
+	 * Directory of the cached outputs, null if outputs are not cached
+	 */
+	public String cacheDir = null;
+	/**
+	 * Largest total size of the cached outputs in megabytes
+	 */
+	public long cacheSize = 256;
+	/**
+	 * Cache of the outputs, opened by Main
+	 */
+	public CompilationCache cache = null;
+	/**
+	 * Write time, allocated bytes and counters of each phase as JSON to standard
+	 * error
+	 */
+	public boolean stats = false;
+	/**
+	 * Total of the counters, created by Main
+	 */
+	public CompileStats statsTotal = null;
+	/**
+	 * Print numbers to a buffer that is written when it is full and at the end,
+	 * instead of calling printf for each number
+	 */
+	public boolean bufferedPrint = false;
+	/**
+	 * Count how many times each block of the program runs, the counts are
+	 * written to standard error at the end
+	 */
+	public boolean profile = false;
+	/**
+	 * Path of the counts written by a profiled program, the report of the input
+	 * file is printed instead of translating it. Null if there is no report.
+	 */
+	public String profileReport = null;
+	/**
+	 * Write x86-64 assembly to a ".s" file instead of LLVM code
+	 */
+	public boolean asm = false;
+	/**
+	 * Assemble and link the assembly with gcc to an executable next to the input
+	 */
+	public boolean nativeExe = false;
+	/**
+	 * Socket path the daemon listens on, "-" for standard input, null if this
+	 * is not a daemon
+	 */
+	public String daemon = null;
+	/**
+	 * Socket path of the daemon that translates the input, null to translate it
+	 * in this JVM
+	 */
+	public String client = null;
+	/**
+	 * Arguments that are not options
+	 */
+	public final ArrayList<String> inputs = new ArrayList<String>();
+
+	/**
+	 * Reads the options from the command line arguments.
+	 *
+	 * @param args command line arguments
+	 * @return options
+	 * @throws IllegalArgumentException if an option is unknown, there is no input
+	 *                                  or options can not be used together
+	 */
+	public static Options parse(String[] args) {
+		Options options = new Options();
+		// Default number of threads is not an option that was given
+		boolean jobs = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--batch"))
+				options.batch = true;
+			else if (arg.equals("--stdout"))
+				options.toStdout = true;
+			else if (arg.equals("--ssa"))
+				options.ssa = true;
+			else if (arg.equals("--nested"))
+				options.nested = true;
+			else if (arg.equals("--diagnostics"))
+				options.diagnostics = true;
+			else if (arg.equals("--stream"))
+				options.stream = true;
+			else if (arg.equals("--stats"))
+				options.stats = true;
+			else if (arg.equals("--buffered-print"))
+				options.bufferedPrint = true;
+			else if (arg.equals("--profile"))
+				options.profile = true;
+			else if (arg.equals("--profile-report"))
+				options.profileReport = text(args, ++i);
+			else if (arg.equals("--asm"))
+				options.asm = true;
+			else if (arg.equals("--native")) {
+				options.asm = true;
+				options.nativeExe = true;
+			} else if (arg.equals("--run"))
+				options.run = true;
+			else if (arg.equals("--jit")) {
+				options.run = true;
+				options.jit = true;
+			} else if (arg.equals("--fuel"))
+				options.fuel = number(args, ++i);
+			else if (arg.equals("--cache"))
+				options.cacheDir = text(args, ++i);
+			else if (arg.equals("--daemon"))
+				options.daemon = text(args, ++i);
+			else if (arg.equals("--client"))
+				options.client = text(args, ++i);
+			else if (arg.equals("--cache-size"))
+				options.cacheSize = number(args, ++i);
+			else if (arg.equals("--jobs")) {
+				options.jobs = (int) Math.min(number(args, ++i), Integer.MAX_VALUE);
+				jobs = true;
+			}
+			else if (arg.startsWith("--"))
+				throw new IllegalArgumentException("unknown option " + arg);
+			else
+				options.inputs.add(arg);
+		}
+		if (options.jobs == 0)
+			throw new IllegalArgumentException("--jobs needs at least 1 thread");
+		// Size is turned into bytes
+		if (options.cacheSize > Long.MAX_VALUE >> 20)
+			throw new IllegalArgumentException("--cache-size can be at most " + (Long.MAX_VALUE >> 20) + " MB");
+		if (options.daemon != null) {
+			if (!options.inputs.isEmpty() || options.batch || options.run || options.client != null || options.stats
+					|| options.stream || options.diagnostics || options.asm || options.profileReport != null)
+				throw new IllegalArgumentException("--daemon only takes --jobs and --cache options");
+			return options;
+		}
+		if (options.inputs.isEmpty())
+			throw new IllegalArgumentException("no input file");
+		if (options.client != null && (options.batch || options.run || options.stats || options.stream
+				|| options.diagnostics || options.asm))
+			throw new IllegalArgumentException(
+					"--client can not be used with --batch, --run, --stats, --stream, --diagnostics or --asm");
+		if (options.batch && options.toStdout)
+			throw new IllegalArgumentException("--stdout can not be used with --batch");
+		if (options.batch && options.run)
+			throw new IllegalArgumentException("--run can not be used with --batch");
+		if (options.jit && options.fuel != Long.MAX_VALUE)
+			throw new IllegalArgumentException("--fuel can not be used with --jit");
+		if (options.run && options.cacheDir != null)
+			throw new IllegalArgumentException("--cache can not be used with --run");
+		if (options.run && options.stats)
+			throw new IllegalArgumentException("--stats can not be used with --run");
+		if (options.run && (options.ssa || options.bufferedPrint || jobs || options.toStdout))
+			throw new IllegalArgumentException(
+					"--run and --jit can not be used with --ssa, --buffered-print, --jobs or --stdout");
+		if (options.diagnostics && options.cacheDir != null)
+			throw new IllegalArgumentException("--diagnostics can not be used with --cache");
+		if (options.stream && (options.run || options.cacheDir != null || options.stats))
+			throw new IllegalArgumentException("--stream can not be used with --run, --cache or --stats");
+		if (options.asm && (options.ssa || options.stream || options.run || options.stats))
+			throw new IllegalArgumentException("--asm can not be used with --ssa, --stream, --run or --stats");
+		if (options.profile && (options.asm || options.run))
+			throw new IllegalArgumentException("--profile can not be used with --asm or --run");
+		// Report only reads the lines of the input and the counts
+		if (options.profileReport != null && (options.inputs.size() != 1 || options.batch || options.run
+				|| options.stream || options.asm || options.client != null || options.ssa || options.toStdout
+				|| options.nested || options.diagnostics || options.stats || options.bufferedPrint || options.profile
+				|| options.cacheDir != null || jobs || options.fuel != Long.MAX_VALUE))
+			throw new IllegalArgumentException("--profile-report takes one input file and no other option");
+		if (options.asm && options.bufferedPrint)
+			throw new IllegalArgumentException("--buffered-print can not be used with --asm");
+		if (options.nativeExe && options.toStdout)
+			throw new IllegalArgumentException("--stdout can not be used with --native");
+		return options;
+	}
+
+	/**
+	 * @return options that change the output, cached outputs are used only
+	 *         with the same options
+	 */
+	public String outputKey() {
+		return (ssa ? "ssa" : "alloca") + (nested ? " nested" : "") + (bufferedPrint ? " buffered" : "")
+				+ (profile ? " profile" : "") + (asm ? " asm" : "");
+	}
+
+	/**
+	 * Reads the argument after an option.
+	 *
+	 * @param args command line arguments
+	 * @param i    index of the argument
+	 * @return the argument
+	 * @throws IllegalArgumentException if there is no argument
+	 */
+	private static String text(String[] args, int i) {
+		if (i == args.length)
+			throw new IllegalArgumentException(args[i - 1] + " needs an argument");
+		return args[i];
+	}
+
+	/**
+	 * Reads the number after an option.
+	 *
+	 * @param args command line arguments
+	 * @param i    index of the number
+	 * @return the number
+	 * @throws IllegalArgumentException if there is no number or it is negative
+	 */
+	private static long number(String[] args, int i) {
+		String option = args[i - 1];
+		if (i == args.length)
+			throw new IllegalArgumentException(option + " needs a number");
+		long number;
+		try {
+			number = Long.parseLong(args[i]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(option + " needs a number, not " + args[i]);
+		}
+		if (number < 0)
+			throw new IllegalArgumentException(option + " can not be negative");
+		return number;
+	}
+}
@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Produces the code of a long program on many threads. Top level statements
+ * are split into parts after if and while statements, where the Parser begins
+ * a new block and forgets the values it loaded, so the code of a part depends
+ * on the parts before it only by the numbers of its temporary variables and
+ * labels. The first part is produced by the Parser of the program, every other
+ * part by its own Parser with numbers from 0. When all parts are done, their
+ * numbers are increased by the numbers used before them and the parts are
+ * appended in order, so the output is the same as the output of one Parser.
+ * In SSA form values of the variables flow from part to part, so the program
+ * is produced by one Parser.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class ParallelGenerator {
+
+	/**
+	 * Smallest number of input lines of a part
+	 */
+	private static final int MIN_PART_LINES = 1 << 12;
+	/**
+	 * Number of parts for each thread, parts are not equally long
+	 */
+	private static final int PARTS_PER_THREAD = 4;
+
+	/**
+	 * Threads that produce the parts, created with the number of threads of the
+	 * first program that is split
+	 */
+	private static ExecutorService pool = null;
+
+	/**
+	 * Produces the code of the statements after the allocas, on many threads if
+	 * the program is long enough.
+	 *
+	 * @param parser     parser of the program, its variables are allocated
+	 * @param out        emitter of the parser
+	 * @param statements top level statements of the program
+	 * @param options    form of the output and number of threads
+	 */
+	public static void produceOutput(final Parser parser, Emitter out, ArrayList<Node.Statement> statements,
+			Options options) {
+		ArrayList<Integer> ends = options.ssa ? null : split(statements, options.jobs);
+		if (ends == null || ends.size() < 2) {
+			parser.produceOutput(statements);
+			return;
+		}
+
+		// Parts after the first one are produced on the pool
+		ExecutorService pool = pool(options.jobs);
+		int parts = ends.size();
+		final Emitter[] codes = new Emitter[parts];
+		ArrayList<Future<Parser>> parsers = new ArrayList<Future<Parser>>(parts);
+		for (int i = 1; i < parts; i++) {
+			final ArrayList<Node.Statement> part = new ArrayList<Node.Statement>(
+					statements.subList(ends.get(i - 1), ends.get(i)));
+			final Emitter code = new Emitter();
+			codes[i] = code;
+			parsers.add(pool.submit(new Callable<Parser>() {
+				public Parser call() {
+					code.recordCounters();
+					Parser partParser = new Parser(parser, code);
+					partParser.produceOutput(part);
+					return partParser;
+				}
+			}));
+		}
+		parser.produceOutput(new ArrayList<Node.Statement>(statements.subList(0, ends.get(0))));
+
+		// Numbers of a part begin where the numbers of the parts before it end
+		ArrayList<Future<Emitter>> stitched = new ArrayList<Future<Emitter>>(parts);
+		for (int i = 1; i < parts; i++) {
+			final Emitter code = codes[i];
+			final int[] bases = { parser.getTempNo(), parser.getIfNo(), parser.getWhileNo(),
+					parser.getCounterNo() };
+			parser.follow(join(parsers.get(i - 1)));
+			stitched.add(pool.submit(new Callable<Emitter>() {
+				public Emitter call() {
+					Emitter renumbered = new Emitter();
+					code.renumber(renumbered, bases);
+					return renumbered;
+				}
+			}));
+		}
+		for (Future<Emitter> code : stitched)
+			out.insert(out.size(), join(code));
+	}
+
+	/**
+	 * Splits the top level statements into parts of about the same number of
+	 * lines. A part ends after an if or while statement.
+	 *
+	 * @param statements top level statements of the program
+	 * @param jobs       number of threads
+	 * @return index after the last statement of each part
+	 */
+	private static ArrayList<Integer> split(ArrayList<Node.Statement> statements, int jobs) {
+		ArrayList<Integer> ends = new ArrayList<Integer>();
+		int size = statements.size();
+		if (jobs > 1 && size > 1) {
+			int start = statements.get(0).line;
+			long lines = statements.get(size - 1).line - start + 1L;
+			long parts = Math.min((long) jobs * PARTS_PER_THREAD, lines / MIN_PART_LINES);
+			long partLines = parts < 2 ? Long.MAX_VALUE : lines / parts;
+			for (int i = 0; i < size - 1; i++) {
+				Node.Statement statement = statements.get(i);
+				int next = statements.get(i + 1).line;
+				if ((statement instanceof Node.If || statement instanceof Node.While) && next - start >= partLines) {
+					ends.add(i + 1);
+					start = next;
+				}
+			}
+		}
+		ends.add(size);
+		return ends;
+	}
+
+	/**
+	 * Waits for a part.
+	 *
+	 * @param future result of the part
+	 * @return the result
+	 */
+	private static <T> T join(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Creates the pool when a program is split for the first time. Threads are
+	 * daemon threads so they do not keep the JVM running, with the stack of
+	 * Main.
+	 *
+	 * @param jobs number of threads
+	 * @return the pool
+	 */
+	private static synchronized ExecutorService pool(int jobs) {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(jobs, Main.deepStackThreads("codegen"));
+		}
+		return pool;
+	}
+}
@@ -1,11 +1,9 @@
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Stack;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 
 /**
  * @author Atilla Türkmen
@@ -14,13 +12,139 @@ import java.util.Stack;
 public class Parser {
 
 	/**
-	 * Writes to output file
+	 * Size of the output buffer of print in bytes
 	 */
-	private PrintWriter writer;
+	private static final int PRINT_BUFFER = 65536;
 	/**
-	 * Keeps track of current line number for syntax error messages
+	 * Functions that print numbers to a buffer and write it with one system call
+	 * when it is full and at the end. @print.int writes the digits from the
+	 * lowest one, computed on the negative value so -2147483648 is printed too.
+	 * A division by 0 writes the buffer in @print.trap before the program stops.
 	 */
-	private int lineNo = 0;
+	private static final String PRINT_RUNTIME = "declare i64 @write(i32, i8*, i64)\n"
+			+ "declare void (i32)* @signal(i32, void (i32)*)\n"
+			+ "@print.buffer = internal global [" + PRINT_BUFFER + " x i8] zeroinitializer\n"
+			+ "@print.length = internal global i32 0\n"
+			+ "@llvm.global_ctors = appending global [1 x { i32, void ()* }] [{ i32, void ()* } { i32 65535, void ()* @print.init }]\n"
+			+ "define internal void @print.flush() {\n"
+			+ "entry:\n"
+			+ "%length = load i32* @print.length\n"
+			+ "store i32 0, i32* @print.length\n"
+			+ "br label %check\n"
+			+ "check:\n"
+			+ "%done = phi i32 [ 0, %entry ], [ %next, %write ]\n"
+			+ "%more = icmp slt i32 %done, %length\n"
+			+ "br i1 %more, label %write, label %end\n"
+			+ "write:\n"
+			+ "%from = getelementptr inbounds [" + PRINT_BUFFER + " x i8]* @print.buffer, i32 0, i32 %done\n"
+			+ "%left = sub i32 %length, %done\n"
+			+ "%bytes = zext i32 %left to i64\n"
+			+ "%written = call i64 @write(i32 1, i8* %from, i64 %bytes)\n"
+			+ "%failed = icmp slt i64 %written, 1\n"
+			+ "%count = trunc i64 %written to i32\n"
+			+ "%next = add i32 %done, %count\n"
+			+ "br i1 %failed, label %end, label %check\n"
+			+ "end:\n"
+			+ "ret void\n"
+			+ "}\n"
+			+ "define internal void @print.int(i32 %value) {\n"
+			+ "entry:\n"
+			+ "%digits = alloca [12 x i8]\n"
+			+ "%length = load i32* @print.length\n"
+			+ "%full = icmp sgt i32 %length, " + (PRINT_BUFFER - 12) + "\n"
+			+ "br i1 %full, label %flush, label %convert\n"
+			+ "flush:\n"
+			+ "call void @print.flush()\n"
+			+ "br label %convert\n"
+			+ "convert:\n"
+			+ "%start = phi i32 [ %length, %entry ], [ 0, %flush ]\n"
+			+ "%negative = icmp slt i32 %value, 0\n"
+			+ "%minus = sub i32 0, %value\n"
+			+ "%first = select i1 %negative, i32 %value, i32 %minus\n"
+			+ "br label %digit\n"
+			+ "digit:\n"
+			+ "%rest = phi i32 [ %first, %convert ], [ %quotient, %digit ]\n"
+			+ "%count = phi i32 [ 0, %convert ], [ %counted, %digit ]\n"
+			+ "%remainder = srem i32 %rest, 10\n"
+			+ "%code = sub i32 48, %remainder\n"
+			+ "%char = trunc i32 %code to i8\n"
+			+ "%slot = getelementptr inbounds [12 x i8]* %digits, i32 0, i32 %count\n"
+			+ "store i8 %char, i8* %slot\n"
+			+ "%counted = add i32 %count, 1\n"
+			+ "%quotient = sdiv i32 %rest, 10\n"
+			+ "%again = icmp ne i32 %quotient, 0\n"
+			+ "br i1 %again, label %digit, label %sign\n"
+			+ "sign:\n"
+			+ "%signSlot = getelementptr inbounds [12 x i8]* %digits, i32 0, i32 %counted\n"
+			+ "store i8 45, i8* %signSlot\n"
+			+ "%signed = add i32 %counted, 1\n"
+			+ "%total = select i1 %negative, i32 %signed, i32 %counted\n"
+			+ "br label %copy\n"
+			+ "copy:\n"
+			+ "%left = phi i32 [ %total, %sign ], [ %remaining, %copy ]\n"
+			+ "%at = phi i32 [ %start, %sign ], [ %after, %copy ]\n"
+			+ "%remaining = sub i32 %left, 1\n"
+			+ "%from = getelementptr inbounds [12 x i8]* %digits, i32 0, i32 %remaining\n"
+			+ "%byte = load i8* %from\n"
+			+ "%to = getelementptr inbounds [" + PRINT_BUFFER + " x i8]* @print.buffer, i32 0, i32 %at\n"
+			+ "store i8 %byte, i8* %to\n"
+			+ "%after = add i32 %at, 1\n"
+			+ "%copied = icmp eq i32 %remaining, 0\n"
+			+ "br i1 %copied, label %newline, label %copy\n"
+			+ "newline:\n"
+			+ "%end = getelementptr inbounds [" + PRINT_BUFFER + " x i8]* @print.buffer, i32 0, i32 %after\n"
+			+ "store i8 10, i8* %end\n"
+			+ "%written = add i32 %after, 1\n"
+			+ "store i32 %written, i32* @print.length\n"
+			+ "ret void\n"
+			+ "}\n"
+			+ "define internal void @print.trap(i32 %signal) {\n"
+			+ "entry:\n"
+			+ "call void @print.flush()\n"
+			+ "%handler = call void (i32)* (i32, void (i32)*)* @signal(i32 8, void (i32)* null)\n"
+			+ "ret void\n"
+			+ "}\n"
+			+ "define internal void @print.init() {\n"
+			+ "entry:\n"
+			+ "%handler = call void (i32)* (i32, void (i32)*)* @signal(i32 8, void (i32)* @print.trap)\n"
+			+ "ret void\n"
+			+ "}\n";
+
+	/**
+	 * Names of the kinds of profile counters: blocks of the program, of if and
+	 * while statements and the arguments of choose functions that are chosen
+	 */
+	public static final String[] COUNTER_KINDS = { "entry", "ifbody", "ifend", "whcond", "whbody", "whend",
+			"choose-zero", "choose-positive", "choose-negative" };
+	/**
+	 * Kind of the first choose counter, the zero, positive and negative
+	 * arguments come in this order
+	 */
+	public static final int CHOOSE_ZERO = 6;
+	/**
+	 * Kinds of profile counters of blocks, positions in COUNTER_KINDS
+	 */
+	private static final int ENTRY = 0, IF_BODY = 1, IF_END = 2, WHILE_COND = 3, WHILE_BODY = 4, WHILE_END = 5;
+
+	/**
+	 * Value of an expression that is a number, the number is written as it is.
+	 * Other values are numbers of temporary variables.
+	 */
+	private static final int NUMBER = -1;
+	/**
+	 * Value of a variable that is not loaded in the current block yet
+	 */
+	private static final int UNKNOWN = -2;
+
+	/**
+	 * Collects the output
+	 */
+	private Emitter out;
+	/**
+	 * Collects alloca instructions, the output unless they are written apart,
+	 * null for a part that is produced in parallel
+	 */
+	private Emitter allocas;
 	/**
 	 * Number of temporary variables. Used for naming.
 	 */
@@ -33,680 +157,1141 @@ public class Parser {
 	 * Number of while statements. Used for labeling.
 	 */
 	private int whileNo = 0;
-	/**
-	 * Number of choose statements. Used for labeling.
-	 */
-	private int chooseNo = 0;
 	/**
 	 * Holds all variable names.
 	 */
 	private HashSet<String> vars = new HashSet<String>();
 	/**
-	 * Path of the output file, needed for syntax error function.
+	 * Results of choose functions that are computed before the operations of
+	 * their expressions
+	 */
+	private int[] chooses = new int[16];
+	/**
+	 * Number of results in chooses
+	 */
+	private int chooseCount = 0;
+	/**
+	 * Position of the next choose result to be used
+	 */
+	private int chooseRead = 0;
+	/**
+	 * Operations on the left side of an expression that are waiting for their
+	 * right side
+	 */
+	private Node.Spine spine = new Node.Spine();
+	/**
+	 * Keeps variables in temporary variables instead of alloca, values coming
+	 * from different blocks are joined with phi
+	 */
+	private boolean ssa;
+	/**
+	 * Positions of variables in valueTemps and valueNumbers
+	 */
+	private HashMap<String, Integer> varIndex = new HashMap<String, Integer>();
+	/**
+	 * Temporary variable that holds the value of each variable in SSA form, NUMBER
+	 * if the value is a number. Without SSA form it is the value loaded or stored
+	 * in the current block, UNKNOWN if there is none.
+	 */
+	private int[] valueTemps = new int[16];
+	/**
+	 * Value of each variable whose temporary variable is NUMBER
+	 */
+	private int[] valueNumbers = new int[16];
+	/**
+	 * Label of the block the output is in, phi instructions name the blocks they
+	 * come from
+	 */
+	private String blockName = "entry";
+	/**
+	 * Number of the label of the block, -1 for the entry block
 	 */
-	private String outputPath;
+	private int blockNo = -1;
+	/**
+	 * Phi instructions of a while condition, written after the body is produced
+	 */
+	private Emitter phis = new Emitter();
+	/**
+	 * Operations computed in the current block and their temporary variables
+	 */
+	private HashMap<Computation, Integer> computed = new HashMap<Computation, Integer>();
+	/**
+	 * Value a variable starts with when it gets its position. A part that is
+	 * produced in parallel begins after a label, where no variable is loaded.
+	 */
+	private int newValue = NUMBER;
+	/**
+	 * Value of each variable that every block of the current while loop starts
+	 * with, the variable is loaded before the loop because the loop does not
+	 * assign it. UNKNOWN outside loops and for the other variables. Not used in
+	 * SSA form, values are not forgotten at labels there.
+	 */
+	private int[] invariantTemps = new int[16];
+	/**
+	 * Value of each variable whose invariant temporary variable is NUMBER
+	 */
+	private int[] invariantNumbers = new int[16];
+	/**
+	 * Operations and choose functions of the current while loops that are
+	 * computed before the loops and their temporary variables
+	 */
+	private IdentityHashMap<Node.Expression, Integer> hoisted = new IdentityHashMap<Node.Expression, Integer>();
+	/**
+	 * Print numbers with the buffered runtime instead of a printf call each
+	 */
+	private boolean bufferPrints = false;
+	/**
+	 * Count how many times each block runs and each argument of a choose function
+	 * is chosen, the counts are written to standard error at the end
+	 */
+	private boolean profile = false;
+	/**
+	 * Kind, line of the statement, first and last line of the statements in the
+	 * block of each profile counter, 4 numbers for each
+	 */
+	private int[] counters = new int[64];
+	/**
+	 * Number of profile counters
+	 */
+	private int counterNo = 0;
+	/**
+	 * Profile counter of the block the output is in, -1 in a part that is
+	 * produced in parallel before its first block
+	 */
+	private int blockCounter = -1;
+	/**
+	 * First and last line of the statements of a part before its first block,
+	 * they are in the block of the part before it
+	 */
+	private int leadingFirst = 0, leadingLast = 0;
 
 	/**
-	 * Constructor of the Parser class, initializes printwriter at given output path.
+	 * Constructor of the Parser class.
 	 * 
-	 * @param writer     Writer that writes to output file
-	 * @param outputPath Path of the output file, needed for syntax error function
-	 * @throws UnsupportedEncodingException
-	 * @throws FileNotFoundException
+	 * @param out emitter that collects the output, it is reset
 	 */
-	public Parser(String outputPath) throws FileNotFoundException, UnsupportedEncodingException {
-		this.writer = new PrintWriter(outputPath, "UTF-8");
-		this.outputPath = outputPath;
+	public Parser(Emitter out) {
+		this(out, false);
 	}
 
 	/**
-	 * Prints the starting LLVM lines
+	 * Constructor of the Parser class.
+	 * 
+	 * @param out emitter that collects the output, it is reset
+	 * @param ssa true to keep variables in registers with phi instructions
 	 */
-	public void printStartingLines() {
-		writer.println("; ModuleID = 'mylang2ir'");
-		writer.println("declare i32 @printf(i8*, ...)");
-		writer.println("@print.str = constant [4 x i8] c\"%d\\0A\\00\"");
-		writer.println("@error.str = constant [23 x i8] c\"Line %d: syntax error\\0A\\00\"");
-		writer.println("define i32 @main() {");
+	public Parser(Emitter out, boolean ssa) {
+		this.out = out;
+		this.allocas = out;
+		this.ssa = ssa;
+		out.reset();
 	}
 
 	/**
-	 * Prints ending of LLVM file and closes the writer
+	 * Constructor of a Parser that produces a part of the program of another
+	 * Parser in alloca form, on another thread. Numbers of temporary variables
+	 * and labels start from 0 and are changed when the part is stitched. Every
+	 * variable must already be allocated by the other Parser and the part must
+	 * begin after a label.
+	 * 
+	 * @param program parser of the whole program
+	 * @param out     emitter that collects the output of the part, it is reset
 	 */
-	public void printEndingLines() {
-		writer.println("ret i32 0");
-		writer.println("}");
-		writer.close();
+	Parser(Parser program, Emitter out) {
+		this.out = out;
+		this.allocas = null;
+		this.ssa = false;
+		this.vars = program.vars;
+		this.bufferPrints = program.bufferPrints;
+		this.profile = program.profile;
+		this.newValue = UNKNOWN;
+		out.reset();
 	}
 
 	/**
-	 * Allocate and store 0 in future variables
+	 * Writes alloca instructions to another emitter. Used when the output is
+	 * written in parts and the allocas are put at the beginning of main at the
+	 * end.
 	 * 
-	 * @param lines List of lines to search variable names
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param allocas emitter that collects the alloca instructions
 	 */
-	public void initializeVars(ArrayList<ArrayList<String>> lines)
-			throws FileNotFoundException, UnsupportedEncodingException {
-		for (int i = 0; i < lines.size(); i++) {
-			ArrayList<String> line = lines.get(i);
-			for (int j = 0; j < line.size(); j++) {
-				String token = line.get(j);
-				if (token.equals("#"))
-					break;
-				if (acceptableVarName(token)) {
-					checkVar(token);
-				}
-			}
-		}
+	public void writeAllocasTo(Emitter allocas) {
+		this.allocas = allocas;
+	}
+
+	/**
+	 * Prints numbers to a buffer that is written when it is full and at the end
+	 * of the program, instead of calling printf for each number. The output is
+	 * the same.
+	 */
+	public void bufferPrints() {
+		bufferPrints = true;
 	}
 
 	/**
-	 * Takes input written in myLang, prints VM code that corresponds to it.
+	 * Adds a counter to every block and to every argument of choose functions.
+	 * Before ret the counts are written to standard error, after a line with
+	 * "mylang-profile" and the number of counters, as lines of kind, line of the
+	 * statement, first and last line of the statements in the block and count.
+	 */
+	public void profile() {
+		profile = true;
+	}
+
+	/**
+	 * Allocates the variables of the next part of a program that is translated in
+	 * parts and stores 0 in them, in SSA form only gives them positions.
 	 * 
-	 * @param lines List of lines, every line is a list of tokens
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param variables variables that do not appear in the parts before
 	 */
-	public void produceOutput(ArrayList<ArrayList<String>> lines)
-			throws FileNotFoundException, UnsupportedEncodingException {
-		for (int j = 0; j < lines.size(); j++) {
-			ArrayList<String> tokens = lines.get(j);
+	public void declareVars(ArrayList<String> variables) {
+		for (String var : variables) {
+			checkVar(var);
+		}
+	}
 
-			// Delete tokens after "#"
-			for (int i = 0; i < tokens.size(); i++) {
-				if (tokens.get(i).equals("#")) {
-					tokens = new ArrayList<String>(tokens.subList(0, i));
-					break;
-				}
-			}
+	/**
+	 * Prints the starting LLVM lines
+	 */
+	public void printStartingLines() {
+		out.append("; ModuleID = 'mylang2ir'").newLine();
+		out.append("declare i32 @printf(i8*, ...)").newLine();
+		out.append("@print.str = constant [4 x i8] c\"%d\\0A\\00\"").newLine();
+		out.append("@error.str = constant [23 x i8] c\"Line %d: syntax error\\0A\\00\"").newLine();
+		if (bufferPrints)
+			out.append(PRINT_RUNTIME);
+		out.append("define i32 @main() {").newLine();
+	}
 
-			// Number of tokens in this line
-			int nofTokens = tokens.size();
+	/**
+	 * Prints ending of LLVM file
+	 */
+	public void printEndingLines() {
+		if (profile)
+			out.append("call void @profile.dump()").newLine();
+		if (bufferPrints)
+			out.append("call void @print.flush()").newLine();
+		out.append("ret i32 0").newLine();
+		out.append("}").newLine();
+		if (profile)
+			printProfileDump();
+	}
 
-			// continue if line is empty
-			if (nofTokens == 0 || tokens.get(0).equals("")) {
-				lineNo++;
-				continue;
+	/**
+	 * Prints the profile counters and the function that writes them.
+	 */
+	private void printProfileDump() {
+		for (int i = 0; i < counterNo; i++)
+			out.append("@profile.").append(i).append(" = internal global i64 0").newLine();
+		String table = "[" + counterNo + " x i64*]";
+		String lines = "[" + counterNo + " x [4 x i32]]";
+		out.append("@profile.table = internal constant ").append(table);
+		if (counterNo == 0)
+			out.append(" zeroinitializer").newLine();
+		else {
+			for (int i = 0; i < counterNo; i++)
+				out.append(i == 0 ? " [" : ", ").append("i64* @profile.").append(i);
+			out.append(']').newLine();
+		}
+		out.append("@profile.lines = internal constant ").append(lines);
+		if (counterNo == 0)
+			out.append(" zeroinitializer").newLine();
+		else {
+			for (int i = 0; i < counterNo; i++) {
+				out.append(i == 0 ? " [" : ", ").append("[4 x i32] [i32 ").append(counters[4 * i]);
+				for (int j = 1; j < 4; j++)
+					out.append(", i32 ").append(counters[4 * i + j]);
+				out.append(']');
 			}
+			out.append(']').newLine();
+		}
+		out.append("@profile.header = internal constant [19 x i8] c\"mylang-profile %d\\0A\\00\"").newLine();
+		out.append("@profile.format = internal constant [18 x i8] c\"%d %d %d %d %lld\\0A\\00\"").newLine();
+		out.append("declare i32 @dprintf(i32, i8*, ...)").newLine();
+		out.append("define internal void @profile.dump() {").newLine();
+		out.append("entry:").newLine();
+		out.append("call i32 (i32, i8*, ...)* @dprintf(i32 2, i8* getelementptr ([19 x i8]* @profile.header, i32 0, i32 0), i32 ")
+				.append(counterNo).append(')').newLine();
+		out.append("br label %check").newLine();
+		out.append("check:").newLine();
+		out.append("%i = phi i32 [ 0, %entry ], [ %next, %dump ]").newLine();
+		out.append("%more = icmp slt i32 %i, ").append(counterNo).newLine();
+		out.append("br i1 %more, label %dump, label %end").newLine();
+		out.append("dump:").newLine();
+		out.append("%pointer = getelementptr inbounds ").append(table).append("* @profile.table, i32 0, i32 %i").newLine();
+		out.append("%counter = load i64** %pointer").newLine();
+		out.append("%count = load i64* %counter").newLine();
+		String[] names = { "kind", "line", "first", "last" };
+		for (int j = 0; j < 4; j++) {
+			out.append('%').append(names[j]).append("Pointer = getelementptr inbounds ").append(lines)
+					.append("* @profile.lines, i32 0, i32 %i, i32 ").append(j).newLine();
+			out.append('%').append(names[j]).append(" = load i32* %").append(names[j]).append("Pointer").newLine();
+		}
+		out.append("call i32 (i32, i8*, ...)* @dprintf(i32 2, i8* getelementptr ([18 x i8]* @profile.format, i32 0, i32 0), ")
+				.append("i32 %kind, i32 %line, i32 %first, i32 %last, i64 %count)").newLine();
+		out.append("%next = add i32 %i, 1").newLine();
+		out.append("br label %check").newLine();
+		out.append("end:").newLine();
+		out.append("ret void").newLine();
+		out.append("}").newLine();
+	}
 
-			// a line must consist of at least 3 tokens if the program has not reached any
-			// if or while conditions
-			if (nofTokens < 3) {
-				// System.out.println("Less than 3 tokens on one line");
-				syntaxError();
+	/**
+	 * Allocate variables that are loaded and store 0 in the ones that can be
+	 * loaded before they are assigned. In SSA form variables start with the
+	 * number 0 and the entry block is labeled for phi instructions.
+	 * 
+	 * @param program program whose variables are allocated
+	 */
+	public void initializeVars(Node.Program program) {
+		if (ssa) {
+			label("entry", -1);
+			for (String var : program.variables) {
+				checkVar(var);
 			}
+			countBlock(ENTRY, -1);
+			return;
+		}
+		HashSet<String> initialized = new HashSet<String>(program.initialized);
+		for (String var : program.allocated) {
+			allocate(var, initialized.contains(var));
+		}
+		countBlock(ENTRY, -1);
+	}
 
-			checkParenthesis(tokens);
+	/**
+	 * Walks the statements, prints VM code that corresponds to them.
+	 * 
+	 * @param statements statements of the program or of a curly bracket body
+	 */
+	public void produceOutput(ArrayList<Node.Statement> statements) {
+		for (Node.Statement statement : statements) {
+			// Condition of a while statement is in its own block
+			if (profile && !(statement instanceof Node.While))
+				countLines(statement.line + 1, statement.line + 1);
 
 			// print function
-			if (tokens.get(0).equals("print")) {
-				// parenthesis expected
-				if (!tokens.get(1).equals("(") || !tokens.get(nofTokens - 1).equals(")")) {
-					// System.out.println("parantez expected");
-					syntaxError();
+			if (statement instanceof Node.Print) {
+				Node.Expression value = ((Node.Print) statement).value;
+				int result = computeExpression(value);
+				if (bufferPrints) {
+					out.append("call void @print.int(i32 ");
+					value(value, result).append(')').newLine();
+				} else {
+					out.append("call i32 (i8*, ...)* @printf(i8* getelementptr ([4 x i8]* @print.str, i32 0, i32 0), i32 ");
+					value(value, result).append(" )").newLine();
 				}
-				List<String> expression = tokens.subList(2, nofTokens - 1);
-				String result = computeExpression(expression);
-				writer.println(
-						"call i32 (i8*, ...)* @printf(i8* getelementptr ([4 x i8]* @print.str, i32 0, i32 0), i32 "
-								+ result + " )");
 			}
 
 			// if statement
-			else if (tokens.get(0).equals("if")) {
-				tokens.remove(0);
-				// take the expression inside parenthesis
-				List<String> expression = evaluateInsideParenthesis(tokens);
+			else if (statement instanceof Node.If) {
+				Node.If ifStatement = (Node.If) statement;
 				// evaluate the result and print branching LLVM code
-				String result = computeExpression(expression);
-				writer.println("%t" + ++tempNo + " = icmp ne i32 " + result + ", 0");
-				writer.println("br i1 %t" + tempNo + ", label %ifbody" + ifNo + ", label %ifend" + ifNo);
-				writer.println("ifbody" + ifNo + ":");
-				// take lines between two curly brackets and call this function on those lines
-				j = evaluateInsideCurlyBrackets(lines, j);
-				writer.println("br label %ifend" + ifNo);
-				writer.println("ifend" + ifNo++ + ":");
+				int result = computeExpression(ifStatement.condition);
+				out.temp(++tempNo).append(" = icmp ne i32 ");
+				value(ifStatement.condition, result).append(", 0").newLine();
+				out.append("br i1 ").temp(tempNo).append(", label %ifbody").counter(Emitter.IF_LABEL, ifNo)
+						.append(", label %ifend").counter(Emitter.IF_LABEL, ifNo).newLine();
+				// Values of variables if the body is skipped
+				int[] skipTemps = Arrays.copyOf(valueTemps, valueTemps.length);
+				int[] skipNumbers = Arrays.copyOf(valueNumbers, valueNumbers.length);
+				String skipName = blockName;
+				int skipNo = blockNo;
+				label("ifbody", ifNo);
+				int labelNo = ifNo++;
+				countBlock(IF_BODY, ifStatement.line);
+				produceOutput(ifStatement.body);
+				out.append("br label %ifend").counter(Emitter.IF_LABEL, labelNo).newLine();
+				String bodyName = blockName;
+				int bodyNo = blockNo;
+				label("ifend", labelNo);
+				if (ssa)
+					joinVars(skipTemps, skipNumbers, skipName, skipNo, bodyName, bodyNo);
+				countBlock(IF_END, ifStatement.line);
 			}
 
 			// while statement
-			else if (tokens.get(0).equals("while")) {
-				tokens.remove(0);
-				// take the expression inside parenthesis
-				List<String> expression = evaluateInsideParenthesis(tokens);
+			else if (statement instanceof Node.While) {
+				Node.While whileStatement = (Node.While) statement;
+				// Values that do not change in the loop are computed once, before it
+				int[] outerTemps = Arrays.copyOf(invariantTemps, varIndex.size());
+				int[] outerNumbers = Arrays.copyOf(invariantNumbers, varIndex.size());
+				ArrayList<Node.Expression> invariants = hoistInvariants(whileStatement);
 				// evaluate the result and print branching LLVM code
-				writer.println("br label %whcond" + whileNo);
-				writer.println("whcond" + whileNo + ":");
-				String result = computeExpression(expression);
-				writer.println("%t" + ++tempNo + " = icmp ne i32 " + result + ", 0");
-				writer.println("br i1 %t" + tempNo + ", label %whbody" + whileNo + ", label %whend" + whileNo);
-				writer.println("whbody" + whileNo + ":");
-				// take lines between two curly brackets and call this function on those lines
-				j = evaluateInsideCurlyBrackets(lines, j);
-				writer.println("br label %whcond" + whileNo);
-				writer.println("whend" + whileNo++ + ":");
+				out.append("br label %whcond").counter(Emitter.WHILE_LABEL, whileNo).newLine();
+				String entryName = blockName;
+				int entryNo = blockNo;
+				label("whcond", whileNo);
+				// Variables assigned in the body get a phi at the condition
+				int phiPosition = out.size();
+				int[] entryTemps = Arrays.copyOf(valueTemps, valueTemps.length);
+				int[] entryNumbers = Arrays.copyOf(valueNumbers, valueNumbers.length);
+				int[] phiTemps = null;
+				if (ssa) {
+					phiTemps = new int[valueTemps.length];
+					Arrays.fill(phiTemps, NUMBER);
+					assignedVars(whileStatement.body, phiTemps);
+					for (int i = 0; i < phiTemps.length; i++) {
+						if (phiTemps[i] != NUMBER)
+							valueTemps[i] = phiTemps[i] = ++tempNo;
+					}
+				}
+				// Phi instructions are inserted before the counter
+				countBlock(WHILE_COND, whileStatement.line);
+				countLines(whileStatement.line + 1, whileStatement.line + 1);
+				int result = computeExpression(whileStatement.condition);
+				out.temp(++tempNo).append(" = icmp ne i32 ");
+				value(whileStatement.condition, result).append(", 0").newLine();
+				out.append("br i1 ").temp(tempNo).append(", label %whbody").counter(Emitter.WHILE_LABEL, whileNo)
+						.append(", label %whend").counter(Emitter.WHILE_LABEL, whileNo).newLine();
+				label("whbody", whileNo);
+				int labelNo = whileNo++;
+				countBlock(WHILE_BODY, whileStatement.line);
+				produceOutput(whileStatement.body);
+				out.append("br label %whcond").counter(Emitter.WHILE_LABEL, labelNo).newLine();
+				if (ssa) {
+					// Values at the end of the body are known now
+					phis.reset();
+					for (int i = 0; i < phiTemps.length; i++) {
+						if (phiTemps[i] == NUMBER)
+							continue;
+						phis.temp(phiTemps[i]).append(" = phi i32 [ ");
+						value(phis, entryTemps[i], entryNumbers[i]).append(", ");
+						block(phis, entryName, entryNo).append(" ], [ ");
+						value(phis, valueTemps[i], valueNumbers[i]).append(", ");
+						block(phis, blockName, blockNo).append(" ]").newLine();
+						valueTemps[i] = phiTemps[i];
+					}
+					out.insert(phiPosition, phis);
+				}
+				// Values computed before this loop are not kept after it
+				for (Node.Expression invariant : invariants)
+					hoisted.remove(invariant);
+				Arrays.fill(invariantTemps, UNKNOWN);
+				System.arraycopy(outerTemps, 0, invariantTemps, 0, outerTemps.length);
+				System.arraycopy(outerNumbers, 0, invariantNumbers, 0, outerNumbers.length);
+				label("whend", labelNo);
+				countBlock(WHILE_END, whileStatement.line);
 			}
 
 			// assignment
-			else if (tokens.get(1).equals("=")) {
-				// read left side of assignment
-				String leftSide = tokens.get(0);
-				checkVar(leftSide);
-				List<String> rightSide = tokens.subList(2, nofTokens);
-				String result = computeExpression(rightSide);
-				writer.println("store i32 " + result + ", i32* %" + leftSide + "r");
-			}
-
-			// Syntax error
 			else {
-				// System.out.println("unexpected token at the begining of line");
-				syntaxError();
+				Node.Assign assignment = (Node.Assign) statement;
+				if (assignment.stored)
+					checkVar(assignment.name);
+				int result = computeExpression(assignment.value);
+				// Value is not stored if no load reads it
+				if (!ssa && assignment.stored) {
+					out.append("store i32 ");
+					value(assignment.value, result).append(", i32* %").append(assignment.name).append('r').newLine();
+				}
+				// Variable takes the value, in SSA form no instruction is needed
+				int index = varIndex(assignment.name);
+				valueTemps[index] = result;
+				if (result == NUMBER)
+					valueNumbers[index] = number(assignment.value);
 			}
-
-			lineNo++;
 		}
 	}
 
 	/**
 	 * Produces the LLVM code that computes the expression if it is an operation.
-	 * Loads the variable if it is a variable. Returns the number if it a number.
-	 * Calls syntax error if token is invalid.
+	 * Loads the variable if it is a variable. Choose functions are computed before
+	 * the operations.
 	 * 
-	 * @param expression list of tokens to be computed
-	 * @return temporary variable that holds result of expression or number if
+	 * @param expression expression to be computed
+	 * @return temporary variable that holds result of expression or NUMBER if
 	 *         expression is only one number
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
-	 */
-	private String computeExpression(List<String> expression)
-			throws FileNotFoundException, UnsupportedEncodingException {
-		// Expression is variable, number or invalid
-		if (expression.size() == 1) {
-			String token = expression.get(0);
-			if (isNumber(token)) {
-				return token;
-			}
-			// token is a variable
-			else {
-				checkVar(token);
-				writer.println("%t" + ++tempNo + " = load i32* %" + token + "r");
-				return "%t" + tempNo;
-			}
+	 */
+	private int computeExpression(Node.Expression expression) {
+		int base = chooseCount;
+		computeChooses(expression);
+		chooseRead = base;
+		int result;
+		if (expression instanceof Node.Var)
+			result = load(((Node.Var) expression).name);
+		else
+			result = operand(expression);
+		chooseCount = base;
+		return result;
+	}
+
+	/**
+	 * Computes choose functions in the expression from left to right. Choose
+	 * functions inside arguments are computed with their arguments.
+	 * 
+	 * @param expression expression to be searched
+	 */
+	private void computeChooses(Node.Expression expression) {
+		// Operations on the left side are searched in a loop, long expressions are
+		// nested on the left
+		int base = spine.size();
+		expression = spine.descend(expression, hoisted);
+		if (expression instanceof Node.Choose && !hoisted.containsKey(expression)) {
+			int result = choose((Node.Choose) expression);
+			if (chooseCount == chooses.length)
+				chooses = Arrays.copyOf(chooses, chooseCount * 2);
+			chooses[chooseCount++] = result;
 		}
-		// Operation, convert to post-fix
-		else {
-			try {
-				// Make negative numbers one token
-				for (int i = 0; i < expression.size(); i++) {
-					if (expression.get(i).equals("-")
-							&& (i == 0 || expression.get(i - 1).matches("\\+|\\-|\\*|\\/|\\(|\\,"))) {
-						expression.remove(i);
-						expression.set(i, "-" + expression.get(i));
-					}
-				}
-				// Syntax error if there is no number or variable after opening parenthesis
-				for (int i = 0; i < expression.size(); i++) {
-					if (expression.get(i).equals("(")) {
-						String firstToken = expression.get(i + 1);
-						if (firstToken.equals(")")) {
-							// System.out.println("Number or variable expected after (");
-							syntaxError();
-						}
-					}
-				}
-				// Compute and replace choose function if it is detected
-				for (int i = 0; i < expression.size(); i++) {
-					if (expression.get(i).equals("choose")) {
-						expression.remove(i);
-						List<String> args = evaluateInsideParenthesis(expression.subList(i, expression.size()));
-						String answer = choose(args);
-						expression.add(i, answer);
-						i = 0;
-					}
-				}
-				// Turn to post-fix and do operations on popped elements
-				expression = infixToPostfix(expression);
-				Stack<String> operands = new Stack<String>();
-				for (int i = 0; i < expression.size(); i++) {
-					String c = expression.get(i);
-					// Print sum code
-					if (c.equals("+")) {
-						fourOperations("add", operands);
-					}
-					// Print subtract code
-					else if (c.equals("-")) {
-						fourOperations("sub", operands);
-					}
-					// Print multiply code
-					else if (c.equals("*")) {
-						fourOperations("mul", operands);
-					}
-					// Print division code
-					else if (c.equals("/")) {
-						fourOperations("sdiv", operands);
-					} else {
-						operands.push(c);
-					}
-				}
-				// stack is not empty, too many operands
-				if (operands.size() != 1) {
-					// System.out.println("stack is not empty, too many operands");
-					syntaxError();
-				}
-				// Return if last token is temporary variable
-				String answer = operands.pop();
-				if (answer.charAt(0) == '%')
-					return answer;
-				// Evaluate last token if it is not temporary variable
-				return computeExpression(new ArrayList<String>(Arrays.asList(answer)));
-			} catch (Exception e) {
-				// stack empty exception, too many operators
-				// System.out.println("problem at evaluating expression");
-				syntaxError();
-				return "program won't come here";
+		for (Node.BinOp operation = spine.next(base); operation != null; operation = spine.next(base))
+			computeChooses(operation.right);
+	}
+
+	/**
+	 * Returns the value of an operand. Variables are not loaded here, the
+	 * operation that uses them loads them.
+	 * 
+	 * @param expression operand
+	 * @return temporary variable, NUMBER for numbers and variables
+	 */
+	private int operand(Node.Expression expression) {
+		Integer before = hoisted.get(expression);
+		if (before != null)
+			return before;
+		if (expression instanceof Node.BinOp)
+			return fourOperations((Node.BinOp) expression);
+		if (expression instanceof Node.Choose)
+			return chooses[chooseRead++];
+		return NUMBER;
+	}
+
+	/**
+	 * Prints the command that carries out the given operation. An operation that
+	 * is already computed in the block is not computed again.
+	 * 
+	 * @param operation add, sub, mul or sdiv node
+	 * @return temporary variable that holds the result
+	 */
+	private int fourOperations(Node.BinOp operation) {
+		// Operations on the left side are done in a loop, from the innermost one
+		int base = spine.size();
+		int leftSide = operand(spine.descend(operation, hoisted));
+		for (operation = spine.next(base); operation != null; operation = spine.next(base)) {
+			int rightSide = operand(operation.right);
+			// Load operands if they are variables
+			if (operation.right instanceof Node.Var)
+				rightSide = load(((Node.Var) operation.right).name);
+			if (operation.left instanceof Node.Var)
+				leftSide = load(((Node.Var) operation.left).name);
+			Computation computation = new Computation(operation.operator, key(operation.left, leftSide),
+					key(operation.right, rightSide));
+			Integer previous = computed.get(computation);
+			if (previous != null) {
+				leftSide = previous;
+				continue;
 			}
+			// Write the command to do the operation
+			out.temp(++tempNo).append(" = ").append(instruction(operation.operator)).append(" i32 ");
+			value(operation.left, leftSide).append(", ");
+			value(operation.right, rightSide).newLine();
+			computed.put(computation, tempNo);
+			leftSide = tempNo;
+		}
+		return leftSide;
+	}
+
+	/**
+	 * @param expression operand of an operation
+	 * @param result     temporary variable or NUMBER
+	 * @return temporary variable or number in one long, temporary variables have
+	 *         the 33th bit set
+	 */
+	private long key(Node.Expression expression, int result) {
+		if (result == NUMBER)
+			return number(expression) & 0xFFFFFFFFL;
+		return 1L << 32 | result;
+	}
+
+	/**
+	 * @param operator PLUS, MINUS, MULTIPLY or DIVIDE
+	 * @return add, sub, mul or sdiv
+	 */
+	private String instruction(TokenType operator) {
+		switch (operator) {
+		case PLUS:
+			return "add";
+		case MINUS:
+			return "sub";
+		case MULTIPLY:
+			return "mul";
+		default:
+			return "sdiv";
 		}
 	}
 
 	/**
-	 * Prints the command that carries out the given LLVM operation
+	 * Writes the value of a computed expression
+	 * 
+	 * @param expression expression that is computed
+	 * @param result     temporary variable or NUMBER
+	 * @return emitter
+	 */
+	private Emitter value(Node.Expression expression, int result) {
+		if (result == NUMBER && expression instanceof Node.Var)
+			return out.append(number(expression));
+		if (result == NUMBER)
+			return out.append(((Node.IntLit) expression).text);
+		return out.temp(result);
+	}
+
+	/**
+	 * Writes a temporary variable or a number
+	 * 
+	 * @param to     emitter to write to
+	 * @param temp   temporary variable or NUMBER
+	 * @param number number written if temp is NUMBER
+	 * @return emitter
+	 */
+	private Emitter value(Emitter to, int temp, int number) {
+		if (temp == NUMBER)
+			return to.append(number);
+		return to.temp(temp);
+	}
+
+	/**
+	 * @param expression number or variable whose value is a number in SSA form
+	 * @return value of the number
+	 */
+	private int number(Node.Expression expression) {
+		if (expression instanceof Node.Var)
+			return valueNumbers[varIndex(((Node.Var) expression).name)];
+		return ((Node.IntLit) expression).value;
+	}
+
+	/**
+	 * Prints the command that loads the variable
 	 * 
-	 * @param operation add, sub, mul or sdiv
-	 * @param operands  post-fix stack, apply operation on top two elements
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param var variable name
+	 * @return temporary variable that holds the value, NUMBER if the value is a
+	 *         number stored in this block or in SSA form
 	 */
-	private void fourOperations(String operation, Stack<String> operands)
-			throws FileNotFoundException, UnsupportedEncodingException {
-		// Load operands if they are variables
-		String rightSide = operands.pop();
-		if (!isNumber(rightSide) && rightSide.charAt(0) != '%') {
-			checkVar(rightSide);
-			writer.println("%t" + ++tempNo + " = load i32* %" + rightSide + "r");
-			rightSide = "%t" + tempNo;
+	private int load(String var) {
+		// In SSA form variable is already in a temporary variable or a number
+		if (ssa)
+			return valueTemps[varIndex(var)];
+		// Value loaded or stored in this block is used again
+		int index = varIndex(var);
+		if (valueTemps[index] != UNKNOWN)
+			return valueTemps[index];
+		checkVar(var);
+		out.temp(++tempNo).append(" = load i32* %").append(var).append('r').newLine();
+		valueTemps[index] = tempNo;
+		return tempNo;
+	}
+
+	/**
+	 * Prints the commands that implements choose function. All arguments are
+	 * computed before the choice, so the answer is chosen with select
+	 * instructions without branches or an extra variable.
+	 * 
+	 * @param function choose node
+	 * @return the variable that holds the answer to the function
+	 */
+	private int choose(Node.Choose function) {
+		// Compute each argument
+		int expr1 = computeExpression(function.selector);
+		int expr2 = computeExpression(function.zero);
+		int expr3 = computeExpression(function.positive);
+		int expr4 = computeExpression(function.negative);
+		if (profile) {
+			String[] conditions = { "eq", "sgt", "slt" };
+			for (int i = 0; i < conditions.length; i++)
+				countChoice(CHOOSE_ZERO + i, function, expr1, conditions[i]);
 		}
-		String leftSide = operands.pop();
-		if (!isNumber(leftSide) && leftSide.charAt(0) != '%') {
-			checkVar(leftSide);
-			writer.println("%t" + ++tempNo + " = load i32* %" + leftSide + "r");
-			leftSide = "%t" + tempNo;
+
+		// expr3 if expr1 is positive, expr4 otherwise
+		out.temp(++tempNo).append(" = icmp sgt i32 ");
+		value(function.selector, expr1).append(", 0").newLine();
+		out.temp(tempNo + 1).append(" = select i1 ").temp(tempNo).append(", i32 ");
+		value(function.positive, expr3).append(", i32 ");
+		value(function.negative, expr4).newLine();
+		int notZero = ++tempNo;
+		// expr2 if expr1 is 0
+		out.temp(++tempNo).append(" = icmp eq i32 ");
+		value(function.selector, expr1).append(", 0").newLine();
+		out.temp(tempNo + 1).append(" = select i1 ").temp(tempNo).append(", i32 ");
+		value(function.zero, expr2).append(", i32 ").temp(notZero).newLine();
+		return ++tempNo;
+	}
+
+	/**
+	 * Adds a profile counter.
+	 * 
+	 * @param kind kind of the counter
+	 * @param line line of the statement in the input file, from 1
+	 * @return number of the counter
+	 */
+	private int newCounter(int kind, int line) {
+		if (4 * counterNo == counters.length)
+			counters = Arrays.copyOf(counters, counters.length * 2);
+		counters[4 * counterNo] = kind;
+		counters[4 * counterNo + 1] = line;
+		counters[4 * counterNo + 2] = 0;
+		counters[4 * counterNo + 3] = 0;
+		return counterNo++;
+	}
+
+	/**
+	 * Prints the instructions that add 1 to the counter of a new block, the
+	 * statements after it are in the block.
+	 * 
+	 * @param kind kind of the block
+	 * @param line line of the statement that begins the block, from 0 like the
+	 *             lines of the nodes, -1 for the entry block
+	 */
+	private void countBlock(int kind, int line) {
+		if (!profile)
+			return;
+		blockCounter = newCounter(kind, line + 1);
+		out.temp(++tempNo).append(" = load i64* @profile.").counter(Emitter.PROFILE_COUNTER, blockCounter)
+				.newLine();
+		out.temp(++tempNo).append(" = add i64 ").temp(tempNo - 1).append(", 1").newLine();
+		out.append("store i64 ").temp(tempNo).append(", i64* @profile.")
+				.counter(Emitter.PROFILE_COUNTER, blockCounter).newLine();
+	}
+
+	/**
+	 * Prints the instructions that add 1 to the counter of an argument of a
+	 * choose function if the selector chooses it.
+	 * 
+	 * @param kind      kind of the counter
+	 * @param function  choose node
+	 * @param selector  value of the selector
+	 * @param condition comparison of the selector with 0 that chooses the argument
+	 */
+	private void countChoice(int kind, Node.Choose function, int selector, String condition) {
+		int counter = newCounter(kind, function.line + 1);
+		out.temp(++tempNo).append(" = icmp ").append(condition).append(" i32 ");
+		value(function.selector, selector).append(", 0").newLine();
+		out.temp(++tempNo).append(" = zext i1 ").temp(tempNo - 1).append(" to i64").newLine();
+		out.temp(++tempNo).append(" = load i64* @profile.").counter(Emitter.PROFILE_COUNTER, counter).newLine();
+		out.temp(++tempNo).append(" = add i64 ").temp(tempNo - 1).append(", ").temp(tempNo - 2).newLine();
+		out.append("store i64 ").temp(tempNo).append(", i64* @profile.").counter(Emitter.PROFILE_COUNTER, counter)
+				.newLine();
+	}
+
+	/**
+	 * Adds lines of statements to the block the output is in.
+	 * 
+	 * @param first first line in the input file, 0 if there are none
+	 * @param last  last line in the input file
+	 */
+	private void countLines(int first, int last) {
+		if (first == 0)
+			return;
+		if (blockCounter < 0) {
+			if (leadingFirst == 0)
+				leadingFirst = first;
+			leadingLast = last;
+			return;
 		}
-		// Throw syntax error if there is zero division
-		if (rightSide.equals("0") && operation.equals("sdiv")) {
-			// System.out.println("Zero division");
-			syntaxError();
+		if (counters[4 * blockCounter + 2] == 0)
+			counters[4 * blockCounter + 2] = first;
+		counters[4 * blockCounter + 3] = last;
+	}
+
+	/**
+	 * Prints a label and remembers that the output is in its block. Values known
+	 * in the previous block are forgotten.
+	 * 
+	 * @param name   name of the label
+	 * @param number number of the label, -1 if the label has no number
+	 */
+	private void label(String name, int number) {
+		out.append(name);
+		if (number >= 0)
+			out.counter(labelKind(name), number);
+		out.append(':').newLine();
+		blockName = name;
+		blockNo = number;
+		computed.clear();
+		// Variables that the loops do not assign keep the values loaded before them
+		if (!ssa) {
+			System.arraycopy(invariantTemps, 0, valueTemps, 0, varIndex.size());
+			System.arraycopy(invariantNumbers, 0, valueNumbers, 0, varIndex.size());
 		}
-		// Write the command to do the operation
-		writer.println("%t" + ++tempNo + " = " + operation + " i32 " + leftSide + ", " + rightSide);
-		operands.push("%t" + tempNo);
 	}
 
 	/**
-	 * Calls syntax error if number of opening and closing parenthesis don't match.
+	 * Writes the name of a block like "%whbody3"
+	 * 
+	 * @param to     emitter to write to
+	 * @param name   name of the label of the block
+	 * @param number number of the label, -1 if the label has no number
+	 * @return emitter
+	 */
+	private Emitter block(Emitter to, String name, int number) {
+		to.append('%').append(name);
+		if (number >= 0)
+			to.counter(labelKind(name), number);
+		return to;
+	}
+
+	/**
+	 * @param name name of a label with a number
+	 * @return IF_LABEL for if labels, WHILE_LABEL for while labels
+	 */
+	private static int labelKind(String name) {
+		return name.startsWith("if") ? Emitter.IF_LABEL : Emitter.WHILE_LABEL;
+	}
+
+	/**
+	 * Prints phi instructions for the variables whose values are different after
+	 * an if body and when the body is skipped.
 	 * 
-	 * @param line Line of tokens that will be searched for parenthesis.
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param skipTemps   temporary variables of the variables when the body is
+	 *                    skipped
+	 * @param skipNumbers numbers of the variables when the body is skipped
+	 * @param skipName    label of the block that skips the body
+	 * @param skipNo      number of the label of the block that skips the body
+	 * @param bodyName    label of the last block of the body
+	 * @param bodyNo      number of the label of the last block of the body
 	 */
-	private void checkParenthesis(ArrayList<String> line) throws FileNotFoundException, UnsupportedEncodingException {
-		int parOpening = 0;
-		for (String token : line) {
-			if (token.equals("("))
-				parOpening++;
-			if (token.equals(")"))
-				parOpening--;
+	private void joinVars(int[] skipTemps, int[] skipNumbers, String skipName, int skipNo, String bodyName,
+			int bodyNo) {
+		for (int i = 0; i < varIndex.size(); i++) {
+			if (skipTemps[i] == valueTemps[i] && (skipTemps[i] != NUMBER || skipNumbers[i] == valueNumbers[i]))
+				continue;
+			out.temp(++tempNo).append(" = phi i32 [ ");
+			value(out, skipTemps[i], skipNumbers[i]).append(", ");
+			block(out, skipName, skipNo).append(" ], [ ");
+			value(out, valueTemps[i], valueNumbers[i]).append(", ");
+			block(out, bodyName, bodyNo).append(" ]").newLine();
+			valueTemps[i] = tempNo;
 		}
-		if (parOpening != 0)
-			syntaxError();
 	}
 
 	/**
-	 * Takes tokens starting with '('. Looks for closing parenthesis. Removes
-	 * parenthesis and expression inside it. Calls syntax error if first line is not
-	 * '('.
+	 * Marks the variables that are assigned in the statements.
 	 * 
-	 * @param tokens input to search expressions inside parenthesis
-	 * @return expression inside the parenthesis
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param statements statements of a curly bracket body
+	 * @param assigned   0 is written at the position of each assigned variable
 	 */
-	private List<String> evaluateInsideParenthesis(List<String> tokens)
-			throws FileNotFoundException, UnsupportedEncodingException {
-		// Syntax error if there is no parenthesis after statement
-		if (!tokens.get(0).equals("(")) {
-			// System.out.println("paranthesis opening expected");
-			syntaxError();
+	private void assignedVars(ArrayList<Node.Statement> statements, int[] assigned) {
+		for (Node.Statement statement : statements) {
+			if (statement instanceof Node.Assign)
+				assigned[varIndex(((Node.Assign) statement).name)] = 0;
+			else if (statement instanceof Node.If)
+				assignedVars(((Node.If) statement).body, assigned);
+			else if (statement instanceof Node.While)
+				assignedVars(((Node.While) statement).body, assigned);
 		}
-		// remove ( from line
-		tokens.remove(0);
-		// take the expression inside the statement
-		int openingParanthesis = 0;
-		boolean finished = false;
-		List<String> expression = new ArrayList<String>();
-		while (!finished) {
-			if (tokens.size() == 0) {
-				// System.out.println("statement içi parantezler eşleşmiyor");
-				syntaxError();
-			} else if (tokens.get(0).equals(")")) {
-				if (openingParanthesis == 0) {
-					finished = true;
-				} else {
-					openingParanthesis--;
-				}
-			} else if (tokens.get(0).equals("(")) {
-				openingParanthesis++;
+	}
+
+	/**
+	 * Prints the code of the values that do not change in a while loop before
+	 * the loop: loads of the variables it reads but does not assign and the
+	 * largest operations and choose functions that only use them. Every block of
+	 * the loop uses these values instead of computing them again.
+	 * 
+	 * @param loop while statement
+	 * @return operations and choose functions that are computed before the loop
+	 */
+	private ArrayList<Node.Expression> hoistInvariants(Node.While loop) {
+		HashSet<String> assigned = new HashSet<String>();
+		assignedNames(loop.body, assigned);
+		LinkedHashSet<String> reads = new LinkedHashSet<String>();
+		ArrayList<Node.Expression> invariants = new ArrayList<Node.Expression>();
+		if (isInvariant(loop.condition, assigned, reads, invariants))
+			hoist(loop.condition, invariants);
+		findInvariants(loop.body, assigned, reads, invariants);
+
+		if (!ssa) {
+			for (String var : reads) {
+				load(var);
+				int index = varIndex(var);
+				invariantTemps[index] = valueTemps[index];
+				invariantNumbers[index] = valueNumbers[index];
 			}
-			expression.add(tokens.get(0));
-			tokens.remove(0);
 		}
-		return expression;
+		for (Node.Expression invariant : invariants)
+			hoisted.put(invariant, computeExpression(invariant));
+		return invariants;
 	}
 
 	/**
-	 * Evaluates and removes expressions between curly brackets
+	 * Finds the values that do not change in the loop in the expressions of the
+	 * statements.
 	 * 
-	 * @param lines all lines of input
-	 * @param j     line number of starting curly bracket
-	 * @return line number of last curly bracket
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param statements statements of a curly bracket body in the loop
+	 * @param assigned   variables assigned in the loop
+	 * @param reads      variables read in the loop and not assigned are added
+	 * @param invariants largest operations and choose functions that do not
+	 *                   change are added
 	 */
-	private int evaluateInsideCurlyBrackets(ArrayList<ArrayList<String>> lines, int j)
-			throws FileNotFoundException, UnsupportedEncodingException {
-		try {
-			ArrayList<String> tokens = lines.get(j);
-			if (tokens.size() == 0) {
-				// tokens = lines.get(++j);
-				// lineNo++;
-				// System.out.println("No curly bracket at statement line");
-				syntaxError();
-			}
-			if (!tokens.get(0).equals("{")) {
-				// System.out.println("statement den sonra { yok");
-				syntaxError();
-			}
-			tokens.remove(0);
-			ArrayList<ArrayList<String>> insideBrackets = new ArrayList<ArrayList<String>>();
-			insideBrackets.add(new ArrayList<String>());
-			String nextToken = "";
-			int statementLine = j;
-			while (!nextToken.equals("}")) {
-				while (tokens.isEmpty()) {
-					tokens = lines.get(++j); // EXCEPTION if no closing curly bracket
-					insideBrackets.add(new ArrayList<String>());
-					lineNo++;
-				}
-				nextToken = tokens.get(0);
-				// Syntax error if nested curly brackets
-				if (nextToken.equals("{")) {
-					// System.out.println("nested curly bracket");
-					syntaxError();
-				}
-				tokens.remove(0);
-				insideBrackets.get(insideBrackets.size() - 1).add(nextToken);
-			}
-			insideBrackets.get(insideBrackets.size() - 1).remove("}");
-			lineNo = statementLine;
-			produceOutput(insideBrackets);
-			lineNo -= 2;
+	private void findInvariants(ArrayList<Node.Statement> statements, HashSet<String> assigned,
+			LinkedHashSet<String> reads, ArrayList<Node.Expression> invariants) {
+		for (Node.Statement statement : statements) {
+			Node.Expression expression;
+			if (statement instanceof Node.Print)
+				expression = ((Node.Print) statement).value;
+			else if (statement instanceof Node.If) {
+				expression = ((Node.If) statement).condition;
+				findInvariants(((Node.If) statement).body, assigned, reads, invariants);
+			} else if (statement instanceof Node.While) {
+				expression = ((Node.While) statement).condition;
+				findInvariants(((Node.While) statement).body, assigned, reads, invariants);
+			} else
+				expression = ((Node.Assign) statement).value;
+			if (isInvariant(expression, assigned, reads, invariants))
+				hoist(expression, invariants);
 		}
-		// print syntax error if something goes wrong
-		// If there is no curly bracket flow comes here with lineNo as last line number
-		// If last line is empty lineNo is one less because of scanner behavior
-		catch (Exception e) {
-			// System.out.println("curly bracket işlerken hata");
-			syntaxError();
+	}
+
+	/**
+	 * Checks if an expression does not change in the loop. The largest parts
+	 * that do not change are added if the whole expression changes. A division
+	 * does not move before the loop unless it divides by a number that can not
+	 * trap, it may not run at all in the loop.
+	 * 
+	 * @param expression expression in the loop
+	 * @param assigned   variables assigned in the loop
+	 * @param reads      variables read in the loop and not assigned are added
+	 * @param invariants largest operations and choose functions that do not
+	 *                   change are added
+	 * @return true if the expression does not change
+	 */
+	private boolean isInvariant(Node.Expression expression, HashSet<String> assigned, LinkedHashSet<String> reads,
+			ArrayList<Node.Expression> invariants) {
+		// Computed before an outer loop
+		if (hoisted.containsKey(expression))
+			return true;
+		if (expression instanceof Node.Var) {
+			String name = ((Node.Var) expression).name;
+			if (assigned.contains(name))
+				return false;
+			reads.add(name);
+			return true;
 		}
-		return j - 1;
-	}
-
-	/**
-	 * Turns infix expressions to post-fix expressions
-	 * 
-	 * @param expression list of tokens to be converted to post-fix
-	 * @return post-fix expression
-	 */
-	private ArrayList<String> infixToPostfix(List<String> expression) {
-		Stack<String> stack = new Stack<String>();
-		ArrayList<String> postfix = new ArrayList<String>();
-		for (String token : expression) {
-			// find places for operators
-			if (token.matches("\\+|\\-|\\*|\\/")) {
-				while (!stack.isEmpty()) {
-					String operatorAtTop = stack.pop();
-					if (operatorAtTop.equals("(")) {
-						stack.push(operatorAtTop);
-						break;
-					} else {
-						// put the token with lowest precedence into the stack
-						if ((operatorAtTop.equals("+") || operatorAtTop.equals("-"))
-								&& (token.equals("*") || token.equals("/"))) {
-							stack.push(operatorAtTop);
-							break;
-						} else {
-							postfix.add(operatorAtTop);
-						}
-					}
-				}
-				stack.push(token);
-			}
-			// Directly push opening parenthesis into the stack
-			else if (token.equals("(")) {
-				stack.push(token);
+		if (expression instanceof Node.Choose) {
+			Node.Choose function = (Node.Choose) expression;
+			Node.Expression[] arguments = { function.selector, function.zero, function.positive, function.negative };
+			boolean[] invariant = new boolean[arguments.length];
+			boolean all = true;
+			for (int i = 0; i < arguments.length; i++) {
+				invariant[i] = isInvariant(arguments[i], assigned, reads, invariants);
+				all &= invariant[i];
 			}
-			// Pop to post-fix expression until matching parenthesis is found
-			else if (token.equals(")")) {
-				while (!stack.isEmpty()) {
-					String match = stack.pop();
-					if (match.equals("("))
-						break;
-					else {
-						postfix.add(match);
-					}
+			if (!all) {
+				for (int i = 0; i < arguments.length; i++) {
+					if (invariant[i])
+						hoist(arguments[i], invariants);
 				}
 			}
-			// append number to post-fix
-			else {
-				postfix.add(token);
-			}
+			return all;
 		}
-		// Pop all remaining items in the stack.
-		while (!stack.isEmpty()) {
-			postfix.add(stack.pop());
+		if (!(expression instanceof Node.BinOp))
+			return true;
+
+		// Operations on the left side are checked in a loop, from the innermost one
+		int base = spine.size();
+		boolean leftInvariant = isInvariant(spine.descend(expression, hoisted), assigned, reads, invariants);
+		for (Node.BinOp operation = spine.next(base); operation != null; operation = spine.next(base)) {
+			boolean rightInvariant = isInvariant(operation.right, assigned, reads, invariants);
+			boolean invariant = leftInvariant && rightInvariant && operation.cannotTrap();
+			if (!invariant) {
+				if (leftInvariant)
+					hoist(operation.left, invariants);
+				if (rightInvariant)
+					hoist(operation.right, invariants);
+			}
+			leftInvariant = invariant;
 		}
-		return postfix;
+		return leftInvariant;
 	}
 
 	/**
-	 * Prints the commands that implements choose function
+	 * Adds an expression that does not change in the loop if it is an operation
+	 * or a choose function that is not computed before an outer loop.
+	 * Variables and numbers need no instruction.
 	 * 
-	 * @param args list of tokens in choose parenthesis
-	 * @return the variable that holds the answer to the function
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
-	 */
-	private String choose(List<String> args) throws FileNotFoundException, UnsupportedEncodingException {
-		try {
-			String holdingVar = "%t" + ++tempNo;
-			// Holds the arguments
-			ArrayList<ArrayList<String>> expressions = new ArrayList<ArrayList<String>>(4);
-			expressions.add(new ArrayList<String>());
-			// Find 4 arguments and put them in expressions list
-			for (int i = 0, j = 0; i < args.size(); i++) {
-				String nextToken = args.get(i);
-				// Ignore commas in choose functions in arguments
-				if (nextToken.equals("choose")) {
-					expressions.get(j).add(nextToken);
-					int openingParenthesis = 0;
-					boolean inChoose = true;
-					while (inChoose) {
-						i++;
-						nextToken = args.get(i);
-						if (nextToken.equals("(")) {
-							openingParenthesis++;
-						} else if (nextToken.equals(")")) {
-							openingParenthesis--;
-							if (openingParenthesis == 0)
-								inChoose = false;
-						}
-						expressions.get(j).add(nextToken);
-					}
-				}
-				// Commas separate arguments if not in another choose function
-				if (nextToken.equals(",")) {
-					j++;
-					expressions.add(new ArrayList<String>());
-					continue;
-				}
-				expressions.get(j).add(nextToken);
-			}
-
-			// Syntax error if there is no 4 arguments
-			if (expressions.size() != 4) {
-				// System.out.println("not 4 arguments in choose func");
-				syntaxError();
-			}
+	 * @param expression expression that does not change
+	 * @param invariants expressions that are computed before the loop
+	 */
+	private void hoist(Node.Expression expression, ArrayList<Node.Expression> invariants) {
+		if ((expression instanceof Node.BinOp || expression instanceof Node.Choose) && !hoisted.containsKey(expression))
+			invariants.add(expression);
+	}
 
-			// Compute each argument
-			String expr1 = computeExpression(expressions.get(0));
-			String expr2 = computeExpression(expressions.get(1));
-			String expr3 = computeExpression(expressions.get(2));
-			String expr4 = computeExpression(expressions.get(3));
-
-			// Print LLVM commands for choose function with control flow statements
-
-			// Allocates one extra variable, I could not find how to deallocate it
-			writer.println(holdingVar + " = alloca i32");
-			// If expr1 is 0
-			writer.println("%t" + ++tempNo + " = icmp eq i32 " + expr1 + ", 0");
-			writer.println("br i1 %t" + tempNo + ", label %choose0" + chooseNo + ", label %choose1" + chooseNo);
-			// store expr2
-			writer.println("choose0" + chooseNo + ":");
-			writer.println("store i32 " + expr2 + ", i32* " + holdingVar);
-			writer.println("br label %chooseend" + chooseNo);
-			// Else come to this label
-			writer.println("choose1" + chooseNo + ":");
-			// If expr1 is positive
-			writer.println("%t" + ++tempNo + " = icmp sgt i32 " + expr1 + ", 0");
-			writer.println("br i1 %t" + tempNo + ", label %choose2" + chooseNo + ", label %choose3" + chooseNo);
-			// Store expr3
-			writer.println("choose2" + chooseNo + ":");
-			writer.println("store i32 " + expr3 + ", i32* " + holdingVar);
-			writer.println("br label %chooseend" + chooseNo);
-			// Else store expr4
-			writer.println("choose3" + chooseNo + ":");
-			writer.println("store i32 " + expr4 + ", i32* " + holdingVar);
-			writer.println("br label %chooseend" + chooseNo);
-			writer.println("chooseend" + chooseNo++ + ":");
-			// Load and return stored value
-			writer.println("%t" + ++tempNo + " = load i32* " + holdingVar);
-			return "%t" + tempNo;
-		} catch (Exception e) {
-			// System.out.println("problem inside choose");
-			syntaxError();
-			return "Program won't come here because syntax error ends it.";
+	/**
+	 * Adds the names of the variables that are assigned in the statements.
+	 * 
+	 * @param statements statements of a curly bracket body
+	 * @param assigned   names of the assigned variables
+	 */
+	private void assignedNames(ArrayList<Node.Statement> statements, HashSet<String> assigned) {
+		for (Node.Statement statement : statements) {
+			if (statement instanceof Node.Assign)
+				assigned.add(((Node.Assign) statement).name);
+			else if (statement instanceof Node.If)
+				assignedNames(((Node.If) statement).body, assigned);
+			else if (statement instanceof Node.While)
+				assignedNames(((Node.While) statement).body, assigned);
 		}
 	}
 
 	/**
-	 * Checks if input is an acceptable variable name
+	 * Finds the position of a variable in the SSA values, new variables start
+	 * with the number 0.
 	 * 
-	 * @param varName variable name to be checked
-	 * @return true if first character is alphabetic and others are alphanumeric
+	 * @param var variable name
+	 * @return position of the variable
 	 */
-	private boolean acceptableVarName(String varName) {
-		if (varName.matches("if|while|print|choose"))
-			return false;
-		if (isAlphabetic(varName.charAt(0))) {
-			for (int i = 1; i < varName.length(); i++) {
-				char c = varName.charAt(i);
-				if (!isDigit(c) && !isAlphabetic(c))
-					return false;
-			}
-			return true;
+	private int varIndex(String var) {
+		Integer index = varIndex.get(var);
+		if (index != null)
+			return index;
+		int newIndex = varIndex.size();
+		if (newIndex == valueTemps.length) {
+			valueTemps = Arrays.copyOf(valueTemps, newIndex * 2);
+			valueNumbers = Arrays.copyOf(valueNumbers, newIndex * 2);
+			invariantTemps = Arrays.copyOf(invariantTemps, newIndex * 2);
+			invariantNumbers = Arrays.copyOf(invariantNumbers, newIndex * 2);
 		}
-		return false;
+		valueTemps[newIndex] = newValue;
+		valueNumbers[newIndex] = 0;
+		invariantTemps[newIndex] = UNKNOWN;
+		varIndex.put(var, newIndex);
+		return newIndex;
 	}
 
 	/**
-	 * Checks if variable name is acceptable, allocates if it is not initialized
+	 * Allocates the variable if it is not initialized and gives it a position in
+	 * the values, in SSA form only gives it a position
 	 * 
 	 * @param var variable name to be checked
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
 	 */
-	private void checkVar(String var) throws FileNotFoundException, UnsupportedEncodingException {
-		if (!acceptableVarName(var)) {
-			// System.out.println(var + " is not accaptable variable name");
-			syntaxError();
-		}
-		var += "r";
-		if (!vars.contains(var)) {
-			vars.add(var);
-			writer.println("%" + var + " = alloca i32");
-			writer.println("store i32 0, i32* %" + var);
+	private void checkVar(String var) {
+		if (ssa) {
+			varIndex(var);
+			return;
 		}
+		allocate(var, true);
 	}
 
 	/**
-	 * Helps determining type of token. Calls syntax error if it is not an
-	 * acceptable variable name
+	 * Allocates the variable if it is not allocated and gives it a position in
+	 * the values
 	 * 
-	 * @param token string to be checked
-	 * @return true if token is number, false if it is an acceptable variable name
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param var  variable name
+	 * @param zero true to store 0 in the variable
 	 */
-	private boolean isNumber(String token) throws FileNotFoundException, UnsupportedEncodingException {
-		// token is number or invalid
-		if (isDigit(token.charAt(0)) || token.charAt(0) == '-') {
-			try {
-				Integer.parseInt(token);
-			} catch (NumberFormatException nfe) {
-				// System.out.println("token is invalid");
-				syntaxError();
-			}
-			return true;
-		}
-		// token is a variable
-		else {
-			return false;
-		}
+	private void allocate(String var, boolean zero) {
+		if (vars.contains(var))
+			return;
+		// Parts produced in parallel only read the variables
+		if (allocas == null)
+			throw new IllegalStateException("variable " + var + " is not allocated before the parts");
+		vars.add(var);
+		varIndex(var);
+		allocas.append('%').append(var).append('r').append(" = alloca i32").newLine();
+		if (zero)
+			allocas.append("store i32 0, i32* %").append(var).append('r').newLine();
 	}
 
 	/**
-	 * Checks if input is between 0 and 9
+	 * Counts the temporary variables and labels of a part that is produced in
+	 * parallel and whose code comes after the code of this Parser. Only the
+	 * ending lines can be printed after it, values of the variables at the end
+	 * of the part are not known.
 	 * 
-	 * @param c one character
-	 * @return true if input is a digit
+	 * @param part parser of the part
 	 */
-	private boolean isDigit(char c) {
-		return (c >= 48 && c <= 57);
+	void follow(Parser part) {
+		tempNo += part.tempNo;
+		ifNo += part.ifNo;
+		whileNo += part.whileNo;
+		if (profile) {
+			// Statements of the part before its first block are in the block of this Parser
+			countLines(part.leadingFirst, part.leadingLast);
+			while (counters.length < 4 * (counterNo + part.counterNo))
+				counters = Arrays.copyOf(counters, counters.length * 2);
+			System.arraycopy(part.counters, 0, counters, 4 * counterNo, 4 * part.counterNo);
+			if (part.blockCounter >= 0)
+				blockCounter = counterNo + part.blockCounter;
+			counterNo += part.counterNo;
+		}
 	}
 
 	/**
-	 * Checks if input is an English letter or underscore
-	 * 
-	 * @param c one character
-	 * @return true if c is an English letter or underscore
+	 * @return number of temporary variables
+	 */
+	public int getTempNo() {
+		return tempNo;
+	}
+
+	/**
+	 * @return number of profile counters
+	 */
+	public int getCounterNo() {
+		return counterNo;
+	}
+
+	/**
+	 * @return number of if statements that got labels
 	 */
-	private boolean isAlphabetic(char c) {
-		return (c >= 65 && c <= 90) || (c >= 97 && c <= 122) || (c == 95);
+	public int getIfNo() {
+		return ifNo;
 	}
 
 	/**
-	 * This function is called when there is a syntax error. Clears the file and
-	 * prints the LLVM code that prints syntax error.
+	 * @return number of while statements that got labels
+	 */
+	public int getWhileNo() {
+		return whileNo;
+	}
+
+	/**
+	 * This function is called when there is a syntax error. Drops the output
+	 * produced so far and prints the LLVM code that prints syntax error.
 	 * 
-	 * @throws FileNotFoundException
-	 * @throws UnsupportedEncodingException
+	 * @param lineNo line number of the syntax error
 	 */
-	private void syntaxError() throws FileNotFoundException, UnsupportedEncodingException {
-		this.writer = new PrintWriter(outputPath, "UTF-8");
+	public void syntaxError(int lineNo) {
+		out.reset();
+		counterNo = 0;
 		printStartingLines();
-		writer.println("call i32 (i8*, ...)* @printf(i8* getelementptr ([23 x i8]* @error.str, i32 0, i32 0), i32 "
-				+ lineNo + ")");
+		out.append("call i32 (i8*, ...)* @printf(i8* getelementptr ([23 x i8]* @error.str, i32 0, i32 0), i32 ")
+				.append(lineNo).append(')').newLine();
 		printEndingLines();
-		System.exit(0);
+	}
+
+	/**
+	 * Operation on two values, operations with the same values give the same
+	 * result
+	 */
+	private static class Computation {
+
+		private final TokenType operator;
+		private final long left;
+		private final long right;
+
+		/**
+		 * Constructor of the Computation class. Operands of addition and
+		 * multiplication are ordered so that their order does not matter.
+		 * 
+		 * @param operator PLUS, MINUS, MULTIPLY or DIVIDE
+		 * @param left     key of the left operand
+		 * @param right    key of the right operand
+		 */
+		Computation(TokenType operator, long left, long right) {
+			boolean swap = (operator == TokenType.PLUS || operator == TokenType.MULTIPLY) && left > right;
+			this.operator = operator;
+			this.left = swap ? right : left;
+			this.right = swap ? left : right;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Computation))
+				return false;
+			Computation computation = (Computation) other;
+			return operator == computation.operator && left == computation.left && right == computation.right;
+		}
+
+		@Override
+		public int hashCode() {
+			return (operator.ordinal() * 31 + Long.hashCode(left)) * 31 + Long.hashCode(right);
+		}
 	}
 }
@@ -0,0 +1,260 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Maps the counts written by a program translated with "--profile" back to
+ * the lines of its mylang input. Every block counter has the first and the
+ * last line of the statements in the block, so each statement line gets the
+ * count of its block. The report lists the lines that ran the most, how often
+ * each argument of the choose functions was chosen and the blocks that never
+ * ran. Counts of many runs in the same file are added. Statements that the
+ * optimizations removed at the beginning or the end of a block, or with their
+ * whole block, are in no block and are listed as not counted.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class ProfileReport {
+
+	/**
+	 * Number of lines in the list of hot lines
+	 */
+	private static final int TOP = 20;
+
+	/**
+	 * Prints the report of a profiled run.
+	 *
+	 * @param inputPath  path of the mylang input
+	 * @param countsPath path of the standard error of the profiled program
+	 * @param out        stream to print the report to
+	 * @return false if there are no counts in the file
+	 * @throws IOException
+	 */
+	public static boolean print(String inputPath, String countsPath, PrintStream out) throws IOException {
+		List<String> source = Files.readAllLines(Paths.get(inputPath), StandardCharsets.ISO_8859_1);
+		// Kind, line, first and last line of each counter and its total count
+		LinkedHashMap<String, long[]> counters = new LinkedHashMap<String, long[]>();
+		int runs;
+		try {
+			runs = readCounts(countsPath, counters);
+		} catch (IllegalArgumentException e) {
+			System.err.println(countsPath + " is " + e.getMessage());
+			return false;
+		}
+		if (runs == 0) {
+			System.err.println(countsPath + " has no counts of a profiled run");
+			return false;
+		}
+
+		long[] lineCounts = new long[source.size() + 1];
+		boolean[] counted = new boolean[source.size() + 1];
+		long total = 0;
+		for (long[] counter : counters.values()) {
+			if (counter[0] >= Parser.CHOOSE_ZERO || counter[2] == 0)
+				continue;
+			for (int line = (int) counter[2]; line <= counter[3] && line <= source.size(); line++) {
+				if (!isStatement(source.get(line - 1)))
+					continue;
+				lineCounts[line] += counter[4];
+				counted[line] = true;
+				total += counter[4];
+			}
+		}
+
+		out.printf("Profile of %s: %d %s, %d counters, %d line executions%n", inputPath, runs,
+				runs == 1 ? "run" : "runs", counters.size(), total);
+		printHotLines(source, lineCounts, counted, total, out);
+		printChooses(counters, out);
+		printNeverRun(counters, out);
+		printNotCounted(source, counted, out);
+		return true;
+	}
+
+	/**
+	 * Reads the counts of every run in a file, other lines are skipped.
+	 *
+	 * @param countsPath path of the file
+	 * @param counters   counters by kind and lines, with the total count
+	 * @return number of runs in the file
+	 * @throws IOException
+	 * @throws IllegalArgumentException with "truncated" if the file ends in the
+	 *                                  counts of a run, a killed run does not
+	 *                                  write all of them, or "malformed" if a
+	 *                                  count is not a number
+	 */
+	private static int readCounts(String countsPath, LinkedHashMap<String, long[]> counters) throws IOException {
+		int runs = 0;
+		BufferedReader reader = Files.newBufferedReader(Paths.get(countsPath), StandardCharsets.ISO_8859_1);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.startsWith("mylang-profile "))
+					continue;
+				int count = (int) number(line.substring(15));
+				for (int i = 0; i < count; i++) {
+					line = reader.readLine();
+					if (line == null)
+						throw new IllegalArgumentException("truncated");
+					String[] fields = line.trim().split(" ");
+					if (fields.length != 5)
+						throw new IllegalArgumentException("malformed");
+					String key = fields[0] + ' ' + fields[1] + ' ' + fields[2] + ' ' + fields[3];
+					long[] counter = counters.get(key);
+					if (counter == null) {
+						counter = new long[5];
+						for (int j = 0; j < 4; j++)
+							counter[j] = number(fields[j]);
+						if (counter[0] >= Parser.COUNTER_KINDS.length)
+							throw new IllegalArgumentException("malformed");
+						counters.put(key, counter);
+					}
+					counter[4] += number(fields[4]);
+				}
+				runs++;
+			}
+		} finally {
+			reader.close();
+		}
+		return runs;
+	}
+
+	/**
+	 * @param text number in the counts file
+	 * @return value of the number
+	 * @throws IllegalArgumentException with "malformed" if it is not a number
+	 *                                  that is not negative
+	 */
+	private static long number(String text) {
+		long value;
+		try {
+			value = Long.parseLong(text.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("malformed");
+		}
+		if (value < 0)
+			throw new IllegalArgumentException("malformed");
+		return value;
+	}
+
+	/**
+	 * @param line line of the input
+	 * @return false if the line is empty, a comment or a closing curly bracket
+	 */
+	private static boolean isStatement(String line) {
+		String text = line.trim();
+		return !text.isEmpty() && text.charAt(0) != '#' && text.charAt(0) != '}';
+	}
+
+	/**
+	 * Prints the lines that ran the most with their share of all line
+	 * executions.
+	 *
+	 * @param source     lines of the input
+	 * @param lineCounts count of each line
+	 * @param counted    true for the lines that are in a block
+	 * @param total      sum of the counts of the lines
+	 * @param out        stream to print to
+	 */
+	private static void printHotLines(List<String> source, final long[] lineCounts, boolean[] counted, long total,
+			PrintStream out) {
+		ArrayList<Integer> lines = new ArrayList<Integer>();
+		for (int line = 1; line < lineCounts.length; line++) {
+			if (counted[line] && lineCounts[line] > 0)
+				lines.add(line);
+		}
+		lines.sort(new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (lineCounts[a] != lineCounts[b])
+					return lineCounts[a] > lineCounts[b] ? -1 : 1;
+				return a - b;
+			}
+		});
+		out.println("Hot lines:");
+		out.printf("  %14s  %6s  %5s  %s%n", "count", "%", "line", "source");
+		for (int i = 0; i < Math.min(TOP, lines.size()); i++) {
+			int line = lines.get(i);
+			out.printf("  %14d  %5.1f%%  %5d  %s%n", lineCounts[line], lineCounts[line] * 100.0 / total, line,
+					source.get(line - 1).trim());
+		}
+	}
+
+	/**
+	 * Prints how many times each argument of the choose functions of each line
+	 * was chosen.
+	 *
+	 * @param counters counters by kind and lines
+	 * @param out      stream to print to
+	 */
+	private static void printChooses(LinkedHashMap<String, long[]> counters, PrintStream out) {
+		// Zero, positive and negative counts of each line
+		LinkedHashMap<Long, long[]> lines = new LinkedHashMap<Long, long[]>();
+		for (long[] counter : counters.values()) {
+			if (counter[0] < Parser.CHOOSE_ZERO)
+				continue;
+			long[] arguments = lines.get(counter[1]);
+			if (arguments == null) {
+				arguments = new long[3];
+				lines.put(counter[1], arguments);
+			}
+			arguments[(int) counter[0] - Parser.CHOOSE_ZERO] += counter[4];
+		}
+		if (lines.isEmpty())
+			return;
+		out.println("Choose functions:");
+		Long[] sorted = lines.keySet().toArray(new Long[0]);
+		Arrays.sort(sorted);
+		for (Long line : sorted) {
+			long[] arguments = lines.get(line);
+			out.printf("  line %d: zero %d, positive %d, negative %d%n", line, arguments[0], arguments[1],
+					arguments[2]);
+		}
+	}
+
+	/**
+	 * Prints the blocks whose counters are 0.
+	 *
+	 * @param counters counters by kind and lines
+	 * @param out      stream to print to
+	 */
+	private static void printNeverRun(LinkedHashMap<String, long[]> counters, PrintStream out) {
+		boolean first = true;
+		for (long[] counter : counters.values()) {
+			if (counter[0] >= Parser.CHOOSE_ZERO || counter[4] != 0 || counter[2] == 0)
+				continue;
+			if (first)
+				out.println("Blocks that never ran:");
+			first = false;
+			out.printf("  %s of line %d, lines %d to %d%n", Parser.COUNTER_KINDS[(int) counter[0]], counter[1],
+					counter[2], counter[3]);
+		}
+	}
+
+	/**
+	 * Prints the statements that are in no block. The optimizations removed
+	 * them, so their runs are not counted.
+	 *
+	 * @param source  lines of the input
+	 * @param counted true for the lines that are in a block
+	 * @param out     stream to print to
+	 */
+	private static void printNotCounted(List<String> source, boolean[] counted, PrintStream out) {
+		boolean first = true;
+		for (int line = 1; line <= source.size(); line++) {
+			if (counted[line] || !isStatement(source.get(line - 1)))
+				continue;
+			if (first)
+				out.println("Not counted, removed by optimizations:");
+			first = false;
+			out.printf("  line %d: %s%n", line, source.get(line - 1).trim());
+		}
+	}
+}
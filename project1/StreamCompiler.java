@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Translates a mylang file in parts, so the heap it needs does not grow with
+ * the size of the input. The input is mapped into memory, every part of whole
+ * top level statements is parsed, folded and translated, and its LLVM code is
+ * written to a temporary file. Allocas of the variables are collected on the
+ * side and written at the beginning of main when the input ends, then the
+ * code of the parts is copied after them. Dead store elimination needs the
+ * whole program, so every variable is allocated and every assignment is
+ * stored. Only the longest top level statement and the variables are kept in
+ * memory.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class StreamCompiler {
+
+	/**
+	 * Number of tokens after which a part ends at the next top level statement
+	 */
+	private static final int PART_TOKENS = 1 << 12;
+	/**
+	 * Size of the code after which it is written to the temporary file
+	 */
+	private static final int FLUSH_SIZE = 1 << 16;
+
+	/**
+	 * Options of the output
+	 */
+	private Options options;
+
+	/**
+	 * Constructor of the StreamCompiler class.
+	 *
+	 * @param options options of the output
+	 */
+	public StreamCompiler(Options options) {
+		this.options = options;
+	}
+
+	/**
+	 * Translates one mylang file to LLVM code. Output file has the same path with
+	 * ".ll" extension.
+	 *
+	 * @param inputPath path of the input file
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the output
+	 */
+	public void compile(String inputPath) throws IOException, SyntaxException {
+		String outputPath = inputPath.substring(0, inputPath.length() - 3) + ".ll";
+		Path directory = options.toStdout ? null : Paths.get(outputPath).toAbsolutePath().getParent();
+		Path body = directory == null ? Files.createTempFile("mylang", ".body")
+				: Files.createTempFile(directory, "mylang", ".body");
+		try {
+			FileChannel bodyChannel = FileChannel.open(body, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				Emitter out = new Emitter();
+				Emitter allocas = new Emitter();
+				try {
+					translate(inputPath, out, allocas, Channels.newOutputStream(bodyChannel));
+				} catch (SyntaxException e) {
+					// Error program is in the buffer, code of the parts is dropped
+					write(out, null, outputPath);
+					throw e;
+				}
+				write(out, bodyChannel, outputPath);
+			} finally {
+				bodyChannel.close();
+			}
+		} finally {
+			Files.deleteIfExists(body);
+		}
+	}
+
+	/**
+	 * Translates the parts of the input and writes their code to the body.
+	 *
+	 * @param inputPath path of the input file
+	 * @param out       buffer for the code, it holds the beginning of main and
+	 *                  the allocas at the end
+	 * @param allocas   buffer for the allocas
+	 * @param body      stream to the temporary file
+	 * @throws IOException
+	 * @throws SyntaxException after the error program is written to the buffer
+	 */
+	private void translate(String inputPath, Emitter out, Emitter allocas, OutputStream body)
+			throws IOException, SyntaxException {
+		AstBuilder builder = new AstBuilder(options.nested, new Lexer(Lexer.map(inputPath)));
+		if (options.diagnostics)
+			builder.collectDiagnostics();
+		ConstantFolder folder = new ConstantFolder();
+		Parser parser = new Parser(out, options.ssa);
+		if (options.bufferedPrint)
+			parser.bufferPrints();
+		if (options.profile)
+			parser.profile();
+		parser.writeAllocasTo(allocas);
+		ArrayList<SyntaxException> errors = new ArrayList<SyntaxException>();
+		// Entry block of SSA form is labeled before the first part
+		parser.initializeVars(new Node.Program(new ArrayList<Node.Statement>(), new ArrayList<String>()));
+		while (builder.readPart(PART_TOKENS)) {
+			Node.Program part;
+			try {
+				part = builder.parsePart();
+			} catch (SyntaxException e) {
+				if (!options.diagnostics) {
+					parser.syntaxError(e.getLineNo());
+					throw e;
+				}
+				errors.addAll(e.getDiagnostics());
+				continue;
+			}
+			// Parts after a syntax error are only searched for more errors
+			if (!errors.isEmpty())
+				continue;
+			part = folder.foldPart(part);
+			parser.declareVars(part.variables);
+			parser.produceOutput(part.statements);
+			// Only whole statements are written, phi instructions are inserted in their loops
+			if (out.size() >= FLUSH_SIZE) {
+				out.writeTo(body);
+				out.reset();
+			}
+		}
+		if (!errors.isEmpty()) {
+			SyntaxException error = new SyntaxException(errors);
+			parser.syntaxError(error.getLineNo());
+			throw error;
+		}
+		parser.printEndingLines();
+		out.writeTo(body);
+
+		// Beginning of main is written last, with the allocas of every variable
+		out.reset();
+		parser.printStartingLines();
+		out.insert(out.size(), allocas);
+	}
+
+	/**
+	 * Writes the beginning of main and the code of the parts to the output file or
+	 * to standard output.
+	 *
+	 * @param out         beginning of main, or the whole error program
+	 * @param bodyChannel temporary file with the code of the parts, null if there
+	 *                    is a syntax error
+	 * @param outputPath  path of the output file
+	 * @throws IOException
+	 */
+	private void write(Emitter out, FileChannel bodyChannel, String outputPath) throws IOException {
+		if (options.toStdout) {
+			out.writeTo(System.out);
+			if (bodyChannel != null)
+				copy(bodyChannel, Channels.newChannel(System.out));
+			System.out.flush();
+			return;
+		}
+		FileChannel output = FileChannel.open(Paths.get(outputPath), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			out.writeTo(Channels.newOutputStream(output));
+			if (bodyChannel != null)
+				copy(bodyChannel, output);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Copies the whole temporary file to a channel without reading it into the
+	 * heap.
+	 *
+	 * @param from temporary file
+	 * @param to   output channel
+	 * @throws IOException
+	 */
+	private static void copy(FileChannel from, WritableByteChannel to) throws IOException {
+		long size = from.size();
+		long position = 0;
+		while (position < size)
+			position += from.transferTo(position, size - position, to);
+	}
+}
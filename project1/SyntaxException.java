@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Atilla Türkmen
+ */
+
+public class SyntaxException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Line number that is written to the error output
+	 */
+	private final int lineNo;
+	/**
+	 * What is wrong on the line
+	 */
+	private final String reason;
+	/**
+	 * Every syntax error of the input if they are collected, this error is the
+	 * first of them
+	 */
+	private final List<SyntaxException> diagnostics;
+
+	/**
+	 * Constructor of the SyntaxException class.
+	 * 
+	 * @param lineNo line number of the syntax error
+	 */
+	public SyntaxException(int lineNo) {
+		this(lineNo, "syntax error");
+	}
+
+	/**
+	 * Constructor of the SyntaxException class.
+	 * 
+	 * @param lineNo line number of the syntax error
+	 * @param reason what is wrong on the line
+	 */
+	public SyntaxException(int lineNo, String reason) {
+		super("Line " + lineNo + ": syntax error");
+		this.lineNo = lineNo;
+		this.reason = reason;
+		this.diagnostics = Collections.singletonList(this);
+	}
+
+	/**
+	 * Constructor of the SyntaxException class for many syntax errors, the line
+	 * and the reason are the ones of the first error.
+	 * 
+	 * @param diagnostics syntax errors in the order they are found
+	 */
+	public SyntaxException(ArrayList<SyntaxException> diagnostics) {
+		super(diagnostics.get(0).getMessage());
+		this.lineNo = diagnostics.get(0).lineNo;
+		this.reason = diagnostics.get(0).reason;
+		this.diagnostics = new ArrayList<SyntaxException>(diagnostics);
+	}
+
+	/**
+	 * @return line number of the syntax error
+	 */
+	public int getLineNo() {
+		return lineNo;
+	}
+
+	/**
+	 * @return what is wrong on the line
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return every syntax error of the input if they are collected, only this
+	 *         error otherwise
+	 */
+	public List<SyntaxException> getDiagnostics() {
+		return diagnostics;
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ * @author Atilla Türkmen
+ */
+
+public enum TokenType {
+
+	IDENTIFIER(null), NUMBER(null), INVALID(null),
+	IF("if"), WHILE("while"), PRINT("print"), CHOOSE("choose"),
+	PLUS("+"), MINUS("-"), MULTIPLY("*"), DIVIDE("/"),
+	LEFT_PARENTHESIS("("), RIGHT_PARENTHESIS(")"), LEFT_CURLY_BRACKET("{"), RIGHT_CURLY_BRACKET("}"),
+	ASSIGN("="), COMMA(","), COMMENT("#");
+
+	/**
+	 * Text of the token, null if it changes from token to token
+	 */
+	private final String text;
+
+	/**
+	 * Constructor of the TokenType enum.
+	 * 
+	 * @param text text of every token of this type, null for words
+	 */
+	private TokenType(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @return text of every token of this type, null for identifiers, numbers and
+	 *         invalid words
+	 */
+	public String getText() {
+		return text;
+	}
+}
@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+/**
+ * Checks that the translation of one expression takes linear time, through
+ * the same path and on the same stack as Main with one thread. Expressions of three shapes are
+ * generated with doubling sizes up to more than 10^5 tokens. PhaseBenchmark
+ * uses the same programs. The test fails if time per token of the largest
+ * expression is more than three times the time per token of a smaller one,
+ * quadratic time would double it with every size.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class ExpressionScaling {
+
+	/**
+	 * Number of tokens of the smallest expression
+	 */
+	private static final int MIN_TOKENS = 8192;
+	/**
+	 * Number of tokens of the largest expression
+	 */
+	private static final int MAX_TOKENS = 262144;
+	/**
+	 * Largest allowed ratio of times per token
+	 */
+	private static final double MAX_RATIO = 3.0;
+	/**
+	 * Times each input is compiled, the shortest time is used
+	 */
+	private static final int REPEAT = 7;
+	/**
+	 * Output buffer, reused like in Main
+	 */
+	private static final Emitter OUT = new Emitter();
+	/**
+	 * Options of Main without arguments, with one thread so times do not depend
+	 * on the number of processors
+	 */
+	private static final Options OPTIONS = new Options();
+
+	/**
+	 * @param args not used
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		OPTIONS.jobs = 1;
+		final boolean[] passed = new boolean[1];
+		Main.runOnDeepStack("scaling", new Callable<Void>() {
+			public Void call() {
+				passed[0] = measure("flat", 0) & measure("wide choose", 1) & measure("nested choose", 2);
+				return null;
+			}
+		});
+		System.exit(passed[0] ? 0 : 1);
+	}
+
+	/**
+	 * Measures one shape with every size and compares the time per token of the
+	 * largest expression with the fastest one.
+	 *
+	 * @param name  name of the shape
+	 * @param shape 0 for operations with parenthesis and negative numbers, 1 for
+	 *              many choose functions joined by operations, 2 for choose
+	 *              functions nested in their first argument
+	 * @return true if time grows linearly
+	 */
+	private static boolean measure(String name, int shape) {
+		// Warm up with the largest input
+		byte[] largest = program(shape, MAX_TOKENS);
+		for (int i = 0; i < REPEAT; i++)
+			compile(largest);
+
+		double fastest = Double.MAX_VALUE;
+		double perToken = 0;
+		double previous = 0;
+		for (int tokens = MIN_TOKENS; tokens <= MAX_TOKENS; tokens *= 2) {
+			byte[] input = program(shape, tokens);
+			System.gc();
+			double best = Double.MAX_VALUE;
+			int outputSize = 0;
+			for (int i = 0; i < REPEAT; i++) {
+				long start = System.nanoTime();
+				outputSize = compile(input);
+				best = Math.min(best, (System.nanoTime() - start) / 1e6);
+			}
+			int count = tokens(input);
+			perToken = best * 1e6 / count;
+			fastest = Math.min(fastest, perToken);
+			System.out.printf("%-14s %8d tokens %9.3f ms %7.2f ns/token  ratio %5.2f  output %d bytes%n", name, count,
+					best, perToken, previous == 0 ? 0 : best / previous, outputSize);
+			previous = best;
+		}
+		if (perToken > fastest * MAX_RATIO) {
+			System.out.printf("%s: %.2f ns/token is more than %.1f times %.2f ns/token, time is not linear%n", name,
+					perToken, MAX_RATIO, fastest);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles an input with Main, without files.
+	 *
+	 * @param input mylang input
+	 * @return size of the output, the program fails if there is a syntax error
+	 */
+	private static int compile(byte[] input) {
+		try {
+			Main.translate(ByteBuffer.wrap(input), OPTIONS, OUT);
+		} catch (SyntaxException e) {
+			throw new IllegalStateException("generated input has a syntax error: " + e.getMessage());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return OUT.size();
+	}
+
+	/**
+	 * Generates a program with a long expression in a loop, so constant folding
+	 * does not compute it at compile time.
+	 *
+	 * @param shape  0 for operations with parenthesis and negative numbers, 1 for
+	 *               many choose functions joined by operations, 2 for choose
+	 *               functions nested in their first argument
+	 * @param tokens approximate number of tokens of the expression
+	 * @return mylang input
+	 */
+	static byte[] program(int shape, int tokens) {
+		// Tokens of one operand or choose function with its operator
+		int terms = tokens / (shape == 0 ? 2 : 16);
+		StringBuilder program = new StringBuilder("a = 3\nb = -7\nwhile (a) {\na = a - 1\nb = b * a\nx = ");
+		String[] operators = { " + ", " - ", " * ", " / " };
+		if (shape == 0) {
+			for (int i = 0; i < terms; i++) {
+				if (i > 0)
+					program.append(operators[i % 4]);
+				if (i % 8 == 0)
+					program.append("(a - -").append(i % 97 + 1).append(')');
+				else if (i % 2 == 0)
+					program.append(i % 89 + 1);
+				else
+					program.append(i % 3 == 0 ? "a" : "b");
+			}
+		} else if (shape == 1) {
+			for (int i = 0; i < terms; i++) {
+				if (i > 0)
+					program.append(operators[i % 3]);
+				program.append("choose(a - ").append(i % 5).append(", b, ").append(i % 7 + 1).append(", a * 2)");
+			}
+		} else {
+			for (int i = 0; i < terms; i++)
+				program.append("choose(");
+			program.append('a');
+			for (int i = 0; i < terms; i++)
+				program.append(" - ").append(i % 3).append(", b, 1, -").append(i % 5).append(')');
+		}
+		program.append("\nprint(x)\n}\n");
+		return program.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param input mylang input
+	 * @return number of tokens
+	 */
+	private static int tokens(byte[] input) {
+		Lexer lexer = new Lexer(ByteBuffer.wrap(input));
+		int count = 0;
+		while (lexer.next())
+			count++;
+		return count;
+	}
+}
@@ -0,0 +1,324 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Measures throughput and allocation of each phase of the translator: lexing,
+ * building the syntax tree, optimizing it, initializeVars, code generation of
+ * long and nested expressions and the whole translation of the deliverable
+ * testcases and of large generated programs. Trees and whole translations
+ * come from Main with one thread and its stack, expressions from
+ * ExpressionScaling. Every phase is warmed up and then run in batches, the
+ * best batch gives operations per second. Allocated bytes are read from the
+ * thread MXBean, so the numbers show if a change adds garbage to a phase.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class PhaseBenchmark {
+
+	/**
+	 * Number of measured batches of each phase
+	 */
+	private static final int BATCHES = 5;
+	/**
+	 * Output buffer, reused like in Main
+	 */
+	private static final Emitter OUT = new Emitter();
+	/**
+	 * Options of Main without arguments, with one thread so results do not
+	 * depend on the number of processors
+	 */
+	private static final Options OPTIONS = new Options();
+	/**
+	 * Thread MXBean that counts allocated bytes
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	/**
+	 * Work measured by the benchmark.
+	 */
+	private interface Phase {
+		/**
+		 * Runs the work once.
+		 *
+		 * @return a number that depends on the result, so the work is not removed
+		 */
+		int run();
+	}
+
+	/**
+	 * Result of every run, printed at the end so the JIT can not remove the work
+	 */
+	private static int sink = 0;
+	/**
+	 * Milliseconds each batch runs
+	 */
+	private static long batchMillis = 500;
+
+	/**
+	 * @param args directory of the deliverable inputs and optionally milliseconds
+	 *             of each batch
+	 * @throws Exception
+	 */
+	public static void main(final String[] args) throws Exception {
+		final String inputs = args.length > 0 ? args[0] : "testcases/deliverables/inputs";
+		OPTIONS.jobs = 1;
+		if (args.length > 1)
+			batchMillis = Long.parseLong(args[1]);
+		Main.runOnDeepStack("benchmark", new Callable<Void>() {
+			public Void call() throws IOException {
+				measureAll(inputs);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Measures every phase and prints one line for each.
+	 *
+	 * @param inputs directory of the deliverable inputs
+	 * @throws IOException
+	 */
+	private static void measureAll(String inputs) throws IOException {
+		final byte[][] deliverables = deliverables(inputs);
+		final byte[] large = largeProgram(2000);
+		final byte[] flat = ExpressionScaling.program(0, 100000);
+		final byte[] wide = ExpressionScaling.program(1, 100000);
+		final byte[] nested = ExpressionScaling.program(2, 20000);
+		final byte[] variables = manyVariables(20000);
+
+		System.out.printf("%-28s %12s %12s %14s %10s%n", "phase", "ops/s", "MB/s input", "bytes/op", "MB/s alloc");
+
+		// Tokens of the large program, like the Lexer in Main
+		measure("lex large program", large.length, new Phase() {
+			public int run() {
+				Lexer lexer = new Lexer(ByteBuffer.wrap(large));
+				int count = 0;
+				while (lexer.next())
+					count++;
+				return count;
+			}
+		});
+
+		measure("parse large program", large.length, new Phase() {
+			public int run() {
+				return parse(large).statements.size();
+			}
+		});
+
+		final Node.Program largeTree = parse(large);
+		measure("optimize large program", large.length, new Phase() {
+			public int run() {
+				Node.Program program = new ConstantFolder().fold(largeTree);
+				return new DeadStoreEliminator().eliminate(program).statements.size();
+			}
+		});
+
+		final Node.Program variablesTree = build(variables);
+		measure("initializeVars 20000 vars", variables.length, new Phase() {
+			public int run() {
+				Parser parser = new Parser(OUT);
+				parser.printStartingLines();
+				parser.initializeVars(variablesTree);
+				return OUT.size();
+			}
+		});
+
+		// Expressions are translated by produceOutput of one assignment
+		measureCodegen("codegen flat expression", flat);
+		measureCodegen("codegen wide choose", wide);
+		measureCodegen("codegen nested choose", nested);
+		measureCodegen("codegen large program", large);
+
+		int total = 0;
+		for (byte[] input : deliverables)
+			total += input.length;
+		measure("translate deliverables", total, new Phase() {
+			public int run() {
+				int size = 0;
+				for (byte[] input : deliverables)
+					size += translate(input);
+				return size;
+			}
+		});
+		measure("translate large program", large.length, new Phase() {
+			public int run() {
+				return translate(large);
+			}
+		});
+		System.out.println("checksum " + sink);
+	}
+
+	/**
+	 * Measures code generation of an optimized program.
+	 *
+	 * @param name  name of the phase
+	 * @param input mylang input
+	 */
+	private static void measureCodegen(String name, byte[] input) {
+		final Node.Program program = build(input);
+		measure(name, input.length, new Phase() {
+			public int run() {
+				Parser parser = new Parser(OUT);
+				parser.printStartingLines();
+				parser.initializeVars(program);
+				parser.produceOutput(program.statements);
+				parser.printEndingLines();
+				return OUT.size();
+			}
+		});
+	}
+
+	/**
+	 * Warms a phase up, then runs it in batches and prints the best batch.
+	 *
+	 * @param name       name of the phase
+	 * @param inputBytes bytes of input one run reads
+	 * @param phase      work to be measured
+	 */
+	private static void measure(String name, long inputBytes, Phase phase) {
+		runBatch(phase);
+		runBatch(phase);
+		double best = 0;
+		double bytesPerOp = Double.MAX_VALUE;
+		for (int i = 0; i < BATCHES; i++) {
+			System.gc();
+			long thread = Thread.currentThread().getId();
+			long allocated = THREADS.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			long ops = runBatch(phase);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+			best = Math.max(best, ops / seconds);
+			bytesPerOp = Math.min(bytesPerOp, (double) allocated / ops);
+		}
+		System.out.printf("%-28s %12.1f %12.1f %14.0f %10.1f%n", name, best, best * inputBytes / 1e6, bytesPerOp,
+				best * bytesPerOp / 1e6);
+	}
+
+	/**
+	 * Runs a phase for batchMillis milliseconds.
+	 *
+	 * @param phase work to be run
+	 * @return number of runs
+	 */
+	private static long runBatch(Phase phase) {
+		long end = System.nanoTime() + batchMillis * 1000000L;
+		long ops = 0;
+		do {
+			sink += phase.run();
+			ops++;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	/**
+	 * @param input mylang input without syntax errors
+	 * @return syntax tree of the input
+	 */
+	private static Node.Program parse(byte[] input) {
+		try {
+			return new AstBuilder(new Lexer(ByteBuffer.wrap(input))).parseProgram();
+		} catch (SyntaxException e) {
+			throw new IllegalStateException("benchmark input has a syntax error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param input mylang input without syntax errors
+	 * @return syntax tree after the optimizations of Main
+	 */
+	private static Node.Program build(byte[] input) {
+		try {
+			return Main.buildProgram(new Lexer(ByteBuffer.wrap(input)), OPTIONS, null);
+		} catch (SyntaxException e) {
+			throw new IllegalStateException("benchmark input has a syntax error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Translates an input with Main, without files.
+	 *
+	 * @param input mylang input
+	 * @return size of the output
+	 */
+	private static int translate(byte[] input) {
+		try {
+			Main.translate(ByteBuffer.wrap(input), OPTIONS, OUT);
+		} catch (SyntaxException e) {
+			// The error program is in the buffer
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return OUT.size();
+	}
+
+	/**
+	 * @param directory directory of the deliverable inputs
+	 * @return contents of the ".my" files in name order
+	 * @throws IOException
+	 */
+	private static byte[][] deliverables(String directory) throws IOException {
+		File[] files = new File(directory).listFiles();
+		if (files == null)
+			throw new IOException(directory + " is not a directory");
+		Arrays.sort(files);
+		ArrayList<byte[]> inputs = new ArrayList<byte[]>();
+		for (File file : files)
+			if (file.getName().endsWith(".my"))
+				inputs.add(Files.readAllBytes(file.toPath()));
+		return inputs.toArray(new byte[inputs.size()][]);
+	}
+
+	/**
+	 * Generates a program with while and if statements whose values are not
+	 * known at compile time, so optimizations do not remove it. Blocks are not
+	 * nested, mylang has no nested blocks.
+	 *
+	 * @param blocks number of while statements
+	 * @return mylang input
+	 */
+	private static byte[] largeProgram(int blocks) {
+		StringBuilder program = new StringBuilder();
+		for (int i = 0; i < blocks; i++) {
+			String v = "v" + i % 37;
+			String w = "w" + i % 23;
+			program.append("n = 0\n");
+			program.append("while (").append(i % 7 + 3).append(" - n) {\n");
+			program.append("  ").append(v).append(" = ").append(v).append(" + n * ").append(i % 11 + 2)
+					.append(" - ").append(w).append(" / ").append(i % 5 + 2).append('\n');
+			program.append("  ").append(w).append(" = ").append(w).append(" + choose(").append(v)
+					.append(" - n, 0, 1, n)\n");
+			program.append("  n = n + 1\n");
+			program.append("}\n");
+			program.append("if (choose(").append(v).append(", 0, 1, ").append(w).append(")) {\n");
+			program.append("  ").append(w).append(" = (").append(w).append(" + ").append(v).append(") * 3 - n\n");
+			program.append("}\n");
+			program.append("print(").append(v).append(" + ").append(w).append(")\n");
+		}
+		return program.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates a program that assigns and prints many variables in a loop.
+	 *
+	 * @param count number of variables
+	 * @return mylang input
+	 */
+	private static byte[] manyVariables(int count) {
+		StringBuilder program = new StringBuilder("while (k - 3) {\nk = k + 1\n");
+		for (int i = 0; i < count; i++)
+			program.append("print(x").append(i).append(")\nx").append(i).append(" = k\n");
+		program.append("}\n");
+		return program.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,127 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares the time of print-heavy programs translated with a printf call for
+ * each print and with "--buffered-print". Each program is translated both
+ * ways, run with lli (or another command that runs LLVM code) with the output
+ * redirected to a file, and the outputs are checked to be the same bytes. The
+ * shortest of REPEAT runs of each program is used.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class PrintBenchmark {
+
+	/**
+	 * Times each program is run
+	 */
+	private static final int REPEAT = 3;
+	/**
+	 * Names of the programs
+	 */
+	private static final String[] NAMES = { "fibonacci", "countdown", "choose" };
+	/**
+	 * Print-heavy programs, COUNT is replaced by the number of loops. Fibonacci
+	 * numbers overflow, so positive and negative numbers of every length are
+	 * printed.
+	 */
+	private static final String[] PROGRAMS = {
+			"a = 0\nb = 1\nn = COUNT\nwhile(n) {\n\tprint(a)\n\tprint(0 - b)\n\tc = a + b\n\ta = b\n\tb = c\n\tn = n - 1\n}\n",
+			"n = COUNT\nwhile(n) {\n\tprint(n)\n\tn = n - 1\n}\n",
+			"n = COUNT\nwhile(n) {\n\tprint(choose(n - n / 3 * 3 - 1, n, 0 - n, n * 7))\n\tn = n - 1\n}\n" };
+
+	/**
+	 * @param args number of loops of each program and the command that runs LLVM
+	 *             code, 1000000 and "lli" by default
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		ArrayList<String> runner = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++)
+			runner.add(args[i]);
+		if (runner.isEmpty())
+			runner.add("lli");
+
+		File directory = Files.createTempDirectory("print-bench").toFile();
+		boolean same = true;
+		try {
+			System.out.printf("%d loops, run with %s%n", count, String.join(" ", runner));
+			for (int i = 0; i < PROGRAMS.length; i++) {
+				byte[] input = PROGRAMS[i].replace("COUNT", Integer.toString(count)).getBytes(StandardCharsets.UTF_8);
+				File printf = translate(input, false, new File(directory, NAMES[i] + ".ll"));
+				File buffered = translate(input, true, new File(directory, NAMES[i] + "-buffered.ll"));
+				File printfOutput = new File(directory, NAMES[i] + ".out");
+				File bufferedOutput = new File(directory, NAMES[i] + "-buffered.out");
+				double printfMillis = time(runner, printf, printfOutput);
+				double bufferedMillis = time(runner, buffered, bufferedOutput);
+				boolean equal = Arrays.equals(Files.readAllBytes(printfOutput.toPath()),
+						Files.readAllBytes(bufferedOutput.toPath()));
+				System.out.printf("  %-10s printf %9.1f ms  buffered %9.1f ms  speedup %5.2fx  %d bytes%s%n", NAMES[i],
+						printfMillis, bufferedMillis, printfMillis / bufferedMillis, printfOutput.length(),
+						equal ? "" : "  OUTPUTS DIFFER");
+				same &= equal;
+			}
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+		System.exit(same ? 0 : 1);
+	}
+
+	/**
+	 * Translates a program to LLVM code like Main does.
+	 *
+	 * @param input    mylang program
+	 * @param buffered true to translate it with "--buffered-print"
+	 * @param output   file of the LLVM code
+	 * @return the output file
+	 * @throws IOException
+	 */
+	private static File translate(byte[] input, boolean buffered, File output) throws IOException {
+		Options options = new Options();
+		options.bufferedPrint = buffered;
+		Emitter out = new Emitter();
+		try {
+			Main.translate(ByteBuffer.wrap(input), options, out);
+		} catch (SyntaxException e) {
+			throw new IllegalStateException("benchmark program has a syntax error: " + e.getMessage());
+		}
+		out.writeTo(output.getPath());
+		return output;
+	}
+
+	/**
+	 * Runs LLVM code REPEAT times with standard output redirected to a file.
+	 *
+	 * @param runner command that runs LLVM code
+	 * @param code   file of the LLVM code
+	 * @param output file of the output of the last run
+	 * @return milliseconds of the shortest run
+	 * @throws IOException          if the command can not be started or fails
+	 * @throws InterruptedException
+	 */
+	private static double time(ArrayList<String> runner, File code, File output)
+			throws IOException, InterruptedException {
+		ArrayList<String> command = new ArrayList<String>(runner);
+		command.add(code.getPath());
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < REPEAT; i++) {
+			long start = System.nanoTime();
+			Process process = new ProcessBuilder(command).redirectOutput(output)
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			int exitCode = process.waitFor();
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+			if (exitCode != 0)
+				throw new IOException(command + " failed with exit code " + exitCode);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Checks that every phase of the translator grows linearly along every
+ * dimension of the input. Programs of the WorkloadGenerator are generated with
+ * doubling sizes of one dimension: length of expressions, depth of nested
+ * choose functions, number of variables and number of statements in bodies.
+ * Programs are translated by Main with one thread and the stack of the command
+ * line, and parsing, constant folding, dead store elimination, initializeVars
+ * and code generation are timed separately with the counters of "--stats".
+ * The exponent of the growth curve of each phase is fitted with least squares
+ * on log time against log size. The suite fails if an exponent is larger than
+ * MAX_EXPONENT. Results are appended to a trend file, so every run is compared
+ * with the run before it.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class ScalingSuite {
+
+	/**
+	 * Largest allowed exponent, 1 is linear and 2 is quadratic
+	 */
+	private static final double MAX_EXPONENT = 1.3;
+	/**
+	 * Number of doubling sizes of each dimension
+	 */
+	private static final int SIZES = 5;
+	/**
+	 * Times each input is translated, the shortest time of each phase is used
+	 */
+	private static final int REPEAT = 5;
+	/**
+	 * Times shorter than this many milliseconds are not used in the fit, they
+	 * are mostly noise
+	 */
+	private static final double MIN_MILLIS = 0.1;
+	/**
+	 * A phase is not fitted if it takes less than this many milliseconds with
+	 * the largest size
+	 */
+	private static final double MIN_LARGEST_MILLIS = 1.0;
+	/**
+	 * Seed of every generated program
+	 */
+	private static final long SEED = 230;
+	/**
+	 * Names of the timed phases
+	 */
+	private static final String[] PHASES = { "parse", "fold", "dead-stores", "initializeVars", "codegen" };
+	/**
+	 * Phases of CompileStats in the order of PHASES
+	 */
+	private static final int[] STATS_PHASES = { CompileStats.PARSE, CompileStats.FOLD, CompileStats.DEAD_STORES,
+			CompileStats.INITIALIZE_VARS, CompileStats.CODEGEN };
+	/**
+	 * Names of the dimensions
+	 */
+	private static final String[] DIMENSIONS = { "expression", "choose-depth", "variables", "block" };
+	/**
+	 * Smallest size of each dimension, the largest one is 2^(SIZES-1) times more
+	 */
+	private static final int[] MIN_SIZES = { 2048, 512, 4096, 2048 };
+	/**
+	 * Output buffer, reused like in Main
+	 */
+	private static final Emitter OUT = new Emitter();
+	/**
+	 * Options of Main without arguments, with one thread so times do not depend
+	 * on the number of processors
+	 */
+	private static final Options OPTIONS = new Options();
+
+	/**
+	 * Exponent and nanoseconds per unit of the last run of each dimension and
+	 * phase in the trend file
+	 */
+	private static HashMap<String, double[]> previous = new HashMap<String, double[]>();
+
+	/**
+	 * @param args path of the trend file, bench/scaling-trend.tsv by default
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		final File trend = new File(args.length > 0 ? args[0] : "bench/scaling-trend.tsv");
+		OPTIONS.jobs = 1;
+		readTrend(trend);
+		final boolean[] passed = new boolean[1];
+		Main.runOnDeepStack("scaling", new Callable<Void>() {
+			public Void call() throws IOException {
+				PrintWriter record = new PrintWriter(new FileWriter(trend, true));
+				try {
+					String time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+					passed[0] = true;
+					for (int dimension = 0; dimension < DIMENSIONS.length; dimension++)
+						passed[0] &= measure(dimension, time, record);
+				} finally {
+					record.close();
+				}
+				return null;
+			}
+		});
+		System.out.println(passed[0] ? "All phases grow linearly" : "Some phases grow faster than linearly");
+		System.exit(passed[0] ? 0 : 1);
+	}
+
+	/**
+	 * Times every phase with every size of one dimension, fits the exponents and
+	 * records them.
+	 *
+	 * @param dimension index of the dimension
+	 * @param time      time of this run, written to the trend file
+	 * @param record    trend file
+	 * @return true if no phase grows faster than MAX_EXPONENT
+	 */
+	private static boolean measure(int dimension, String time, PrintWriter record) {
+		int largest = MIN_SIZES[dimension] << (SIZES - 1);
+		// Warm up with the largest input
+		byte[] warmUp = generator(dimension, largest).generate();
+		for (int i = 0; i < REPEAT; i++)
+			translate(warmUp, new double[PHASES.length]);
+
+		double[] sizes = new double[SIZES];
+		double[][] millis = new double[PHASES.length][SIZES];
+		for (int s = 0; s < SIZES; s++) {
+			int size = MIN_SIZES[dimension] << s;
+			byte[] input = generator(dimension, size).generate();
+			sizes[s] = size;
+			for (int phase = 0; phase < PHASES.length; phase++)
+				millis[phase][s] = Double.MAX_VALUE;
+			for (int i = 0; i < REPEAT; i++) {
+				// Garbage of the previous run is not collected in a timed phase
+				System.gc();
+				double[] phases = new double[PHASES.length];
+				translate(input, phases);
+				for (int phase = 0; phase < PHASES.length; phase++)
+					millis[phase][s] = Math.min(millis[phase][s], phases[phase]);
+			}
+		}
+
+		boolean passed = true;
+		System.out.printf("%s, sizes %d to %d%n", DIMENSIONS[dimension], MIN_SIZES[dimension], largest);
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			String key = DIMENSIONS[dimension] + '\t' + PHASES[phase];
+			double exponent = exponent(sizes, millis[phase]);
+			double nsPerUnit = millis[phase][SIZES - 1] * 1e6 / largest;
+			String fitted = Double.isNaN(exponent) ? "      -" : String.format("%7.2f", exponent);
+			String change = "";
+			double[] last = previous.get(key);
+			if (last != null) {
+				change = String.format("  previous %s, %+.1f%% ns/unit",
+						Double.isNaN(last[0]) ? "-" : String.format("%.2f", last[0]),
+						(nsPerUnit - last[1]) * 100 / last[1]);
+			}
+			System.out.printf("  %-15s %9.3f ms  exponent %s  %9.2f ns/unit%s%n", PHASES[phase],
+					millis[phase][SIZES - 1], fitted, nsPerUnit, change);
+			if (exponent > MAX_EXPONENT) {
+				System.out.printf("  %s grows with exponent %.2f along %s, more than %.1f%n", PHASES[phase], exponent,
+						DIMENSIONS[dimension], MAX_EXPONENT);
+				passed = false;
+			}
+			record.printf("%s\t%s\t%s\t%.3f%n", time, key, Double.isNaN(exponent) ? "-" : String.format("%.3f", exponent),
+					nsPerUnit);
+		}
+		return passed;
+	}
+
+	/**
+	 * Creates the generator of a size of a dimension, other dimensions are
+	 * small.
+	 *
+	 * @param dimension index of the dimension
+	 * @param size      size of the dimension
+	 * @return the generator
+	 */
+	private static WorkloadGenerator generator(int dimension, int size) {
+		WorkloadGenerator generator = new WorkloadGenerator(SEED);
+		generator.expressionLength = 4;
+		switch (dimension) {
+		case 0:
+			generator.statements = 16;
+			generator.expressionLength = size;
+			break;
+		case 1:
+			generator.statements = 8;
+			generator.chooseDepth = size;
+			break;
+		case 2:
+			generator.statements = size;
+			generator.variables = size;
+			break;
+		default:
+			generator.statements = 8;
+			generator.blockSize = size;
+		}
+		return generator;
+	}
+
+	/**
+	 * Translates an input with Main, without files, and times each phase.
+	 *
+	 * @param input  mylang input
+	 * @param phases milliseconds of each phase are written here
+	 * @return size of the output, the program fails if there is a syntax error
+	 */
+	private static int translate(byte[] input, double[] phases) {
+		CompileStats stats = new CompileStats();
+		stats.start();
+		try {
+			Main.translate(ByteBuffer.wrap(input), OPTIONS, OUT, stats);
+		} catch (SyntaxException e) {
+			throw new IllegalStateException("generated input has a syntax error: " + e.getMessage());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (int i = 0; i < PHASES.length; i++)
+			phases[i] = stats.nanos(STATS_PHASES[i]) / 1e6;
+		return OUT.size();
+	}
+
+	/**
+	 * Fits time = c * size^exponent with least squares on the logarithms.
+	 *
+	 * @param sizes  sizes of the dimension
+	 * @param millis shortest time of each size
+	 * @return the exponent, NaN if the phase is too fast to be fitted
+	 */
+	private static double exponent(double[] sizes, double[] millis) {
+		if (millis[millis.length - 1] < MIN_LARGEST_MILLIS)
+			return Double.NaN;
+		int n = 0;
+		double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (millis[i] < MIN_MILLIS)
+				continue;
+			double x = Math.log(sizes[i]);
+			double y = Math.log(millis[i]);
+			n++;
+			sumX += x;
+			sumY += y;
+			sumXX += x * x;
+			sumXY += x * y;
+		}
+		if (n < 3)
+			return Double.NaN;
+		return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+	}
+
+	/**
+	 * Reads the last record of each dimension and phase from the trend file.
+	 *
+	 * @param trend trend file, it may not exist yet
+	 * @throws IOException
+	 */
+	private static void readTrend(File trend) throws IOException {
+		if (!trend.exists())
+			return;
+		BufferedReader reader = new BufferedReader(new FileReader(trend));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// time, dimension, phase, exponent, nanoseconds per unit
+				String[] fields = line.split("\t");
+				if (fields.length != 5)
+					continue;
+				double exponent = fields[3].equals("-") ? Double.NaN : Double.parseDouble(fields[3]);
+				previous.put(fields[1] + '\t' + fields[2], new double[] { exponent, Double.parseDouble(fields[4]) });
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,266 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates valid mylang programs from a seed. The size of a program can be
+ * tuned along the dimensions where the translator can grow: number of terms
+ * of an expression, depth of a nested choose function, number of variables
+ * and number of statements in the body of an if or while statement. Divisors
+ * are numbers that are not 0 and every while statement counts up to a small
+ * bound, so the programs can also be run. A while statement at the beginning
+ * makes the values of all variables unknown, so constant folding does not
+ * remove the work of the later phases. The same seed and sizes always give the
+ * same program.
+ *
+ * @author Atilla Türkmen
+ */
+
+public class WorkloadGenerator {
+
+	/**
+	 * Every this many top level statements one is an if or while statement, if
+	 * bodies are generated
+	 */
+	private static final int BLOCK_EVERY = 4;
+	/**
+	 * Operators joining the terms of an expression
+	 */
+	private static final String[] OPERATORS = { " + ", " - ", " * ", " / " };
+
+	/**
+	 * Number of top level statements
+	 */
+	public int statements = 64;
+	/**
+	 * Number of terms of each expression
+	 */
+	public int expressionLength = 8;
+	/**
+	 * Depth of the choose function nested in the first argument of another one,
+	 * one in each expression, 0 for no choose functions
+	 */
+	public int chooseDepth = 0;
+	/**
+	 * Number of different variables, they are assigned in turn
+	 */
+	public int variables = 16;
+	/**
+	 * Number of statements in the body of each if and while statement, 0 for no
+	 * if and while statements
+	 */
+	public int blockSize = 0;
+	/**
+	 * Seed of the random numbers
+	 */
+	public long seed;
+
+	/**
+	 * Random numbers of the kinds of statements, they do not depend on the sizes
+	 * so programs of different sizes have the same statements
+	 */
+	private Random kinds;
+	/**
+	 * Random numbers of the terms and operators
+	 */
+	private Random random;
+	/**
+	 * Program being generated
+	 */
+	private StringBuilder program;
+	/**
+	 * Number of assignments so far, the next one assigns the next variable
+	 */
+	private int assignments;
+
+	/**
+	 * Constructor of the WorkloadGenerator class.
+	 *
+	 * @param seed seed of the random numbers
+	 */
+	public WorkloadGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Generates a program with the current sizes.
+	 *
+	 * @return mylang input
+	 */
+	public byte[] generate() {
+		kinds = new Random(seed);
+		random = new Random(~seed);
+		program = new StringBuilder();
+		assignments = 0;
+		unknownValues();
+		for (int i = 0; i < statements; i++) {
+			if (blockSize > 0 && i % BLOCK_EVERY == BLOCK_EVERY - 1)
+				blockStatement(i);
+			else
+				statement();
+		}
+		return program.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates a while statement that adds its counter to every variable, the
+	 * constant folder can not know their values after it.
+	 */
+	private void unknownValues() {
+		program.append("n = 0\nwhile (2 - n) {\n");
+		for (int i = 0; i < variables; i++)
+			program.append('v').append(i).append(" = v").append(i).append(" * 3 + n\n");
+		program.append("n = n + 1\n}\n");
+	}
+
+	/**
+	 * Generates an if statement or a while statement with a counter that is only
+	 * assigned by the loop.
+	 *
+	 * @param number number of the statement, used to name the counter
+	 */
+	private void blockStatement(int number) {
+		if (kinds.nextBoolean()) {
+			program.append("if (");
+			expression();
+			program.append(") {\n");
+			for (int i = 0; i < blockSize; i++)
+				statement();
+			program.append("}\n");
+			return;
+		}
+		String counter = "n" + number;
+		program.append(counter).append(" = 0\n");
+		program.append("while (").append(kinds.nextInt(3) + 2).append(" - ").append(counter).append(") {\n");
+		for (int i = 0; i < blockSize; i++)
+			statement();
+		program.append(counter).append(" = ").append(counter).append(" + 1\n}\n");
+	}
+
+	/**
+	 * Generates a print function or an assignment.
+	 */
+	private void statement() {
+		if (kinds.nextInt(4) == 0) {
+			program.append("print(");
+			expression();
+			program.append(")\n");
+			return;
+		}
+		program.append('v').append(assignments++ % variables).append(" = ");
+		expression();
+		program.append('\n');
+	}
+
+	/**
+	 * Generates terms joined by operators, one of them is the nested choose
+	 * function.
+	 */
+	private void expression() {
+		int choosePosition = chooseDepth > 0 ? random.nextInt(expressionLength) : -1;
+		for (int i = 0; i < expressionLength; i++) {
+			if (i == choosePosition) {
+				if (i > 0)
+					program.append(OPERATORS[random.nextInt(3)]);
+				choose();
+				continue;
+			}
+			if (i == 0) {
+				term();
+				continue;
+			}
+			String operator = OPERATORS[random.nextInt(4)];
+			program.append(operator);
+			// Only numbers that are not 0 divide
+			if (operator.equals(" / "))
+				program.append(random.nextInt(9) + 1);
+			else
+				term();
+		}
+	}
+
+	/**
+	 * Generates a variable, a number, a negative number or a subtraction in
+	 * parenthesis.
+	 */
+	private void term() {
+		switch (random.nextInt(4)) {
+		case 0:
+			variable();
+			break;
+		case 1:
+			program.append(random.nextInt(100));
+			break;
+		case 2:
+			program.append('-').append(random.nextInt(99) + 1);
+			break;
+		default:
+			program.append('(');
+			variable();
+			program.append(" - ").append(random.nextInt(100)).append(')');
+		}
+	}
+
+	/**
+	 * Generates choose functions nested in the first argument of each other.
+	 */
+	private void choose() {
+		for (int i = 0; i < chooseDepth; i++)
+			program.append("choose(");
+		variable();
+		for (int i = 0; i < chooseDepth; i++) {
+			program.append(" - ").append(random.nextInt(3)).append(", ");
+			variable();
+			program.append(", ").append(random.nextInt(10)).append(", -").append(random.nextInt(10) + 1).append(')');
+		}
+	}
+
+	/**
+	 * Generates one of the variables.
+	 */
+	private void variable() {
+		program.append('v').append(random.nextInt(variables));
+	}
+
+	/**
+	 * Writes a generated program to a file or to standard output.
+	 *
+	 * @param args "--seed N", "--statements N", "--expression N", "--choose-depth
+	 *             N", "--variables N", "--block N" and optionally the output
+	 *             path
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		WorkloadGenerator generator = new WorkloadGenerator(1);
+		String outputPath = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--seed"))
+				generator.seed = Long.parseLong(args[++i]);
+			else if (args[i].equals("--statements"))
+				generator.statements = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--expression"))
+				generator.expressionLength = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--choose-depth"))
+				generator.chooseDepth = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--variables"))
+				generator.variables = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--block"))
+				generator.blockSize = Integer.parseInt(args[++i]);
+			else if (args[i].startsWith("--"))
+				throw new IllegalArgumentException("unknown option " + args[i]);
+			else
+				outputPath = args[i];
+		}
+		byte[] input = generator.generate();
+		OutputStream out = outputPath == null ? System.out : new FileOutputStream(outputPath);
+		try {
+			out.write(input);
+			out.flush();
+		} finally {
+			if (outputPath != null)
+				out.close();
+		}
+	}
+}
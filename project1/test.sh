@@ -1,6 +1,6 @@
 #!/bin/bash
 
-for ((i=0; i<=18; i++))
+for ((i=0; i<=21; i++))
 do
 	java -jar ./mylang2ir testcases/deliverables/inputs/testcase${i}.my
 	RESULT=$(llvm/lli testcases/deliverables/inputs/testcase${i}.ll)